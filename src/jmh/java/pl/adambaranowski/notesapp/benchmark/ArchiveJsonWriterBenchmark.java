@@ -0,0 +1,178 @@
+package pl.adambaranowski.notesapp.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.service.ArchiveJsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of serialization of archive alone (without database) - JsonGenerator used by ArchiveService
+ * against previous writer which concatenated JSON by hand.
+ * <p>
+ * Allocation rate is measured with GC profiler:
+ * <pre>
+ *     mvn -Pbenchmark verify -DskipTests -Djmh.args="ArchiveJsonWriterBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Adam Baranowski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveJsonWriterBenchmark {
+
+    /**
+     * Number of notes in archive
+     */
+    @Param({"1000", "10000"})
+    public int noteCount;
+
+    /**
+     * Number of versions of every note
+     */
+    @Param({"10"})
+    public int versionsPerNote;
+
+    private final JsonFactory jsonFactory = new ObjectMapper().getFactory();
+
+    private List<Note> notes;
+
+    @Setup
+    public void createArchive() {
+        notes = new ArrayList<>(noteCount);
+        LocalDateTime dateTime = LocalDateTime.of(2020, 10, 6, 19, 51, 28);
+        for (int i = 0; i < noteCount; i++) {
+            Note note = new Note(NotesAppState.title(i));
+            note.setId((long) i + 1);
+            List<NoteVersion> versions = new ArrayList<>(versionsPerNote);
+            for (int version = 1; version <= versionsPerNote; version++) {
+                versions.add(new NoteVersion(version, NotesAppState.content(i, version), dateTime.plusMinutes(version), note));
+            }
+            note.setNoteVersions(versions);
+            notes.add(note);
+        }
+    }
+
+    @Benchmark
+    public void jsonGenerator(Blackhole blackhole) throws IOException {
+        OutputStream out = new ArchiveServiceBenchmark.BlackholeOutputStream(blackhole);
+        try (ArchiveJsonWriter writer = new ArchiveJsonWriter(jsonFactory.createGenerator(out, JsonEncoding.UTF8))) {
+            writer.writeStartArchive();
+            for (Note note : notes) {
+                writer.writeNote(note, note.getNoteVersions());
+            }
+            writer.writeEndArchive();
+        }
+    }
+
+    @Benchmark
+    public void stringConcatenation(Blackhole blackhole) throws IOException {
+        OutputStream out = new ArchiveServiceBenchmark.BlackholeOutputStream(blackhole);
+        StringConcatenationWriter writer = new StringConcatenationWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write('[');
+        boolean firstNote = true;
+        for (Note note : notes) {
+            if (!firstNote)
+                writer.write(',');
+            firstNote = false;
+            writer.writeNote(note, note.getNoteVersions());
+        }
+        writer.write(']');
+        writer.flush();
+    }
+
+    /**
+     * Previous serialization of archive - JSON concatenated by hand, without escaping,
+     * buffered in char array and encoded by OutputStreamWriter. Kept only for comparison.
+     */
+    static class StringConcatenationWriter {
+
+        private final Writer out;
+
+        private final char[] buffer = new char[8192];
+
+        private int position = 0;
+
+        StringConcatenationWriter(Writer out) {
+            this.out = out;
+        }
+
+        void writeNote(Note note, List<NoteVersion> versions) throws IOException {
+            write("{\"id\":");
+            write(String.valueOf(note.getId()));
+            write(",\"title\":\"");
+            write(note.getTitle());
+            write("\", \"versions\": [");
+            boolean firstVersion = true;
+            for (NoteVersion version : versions) {
+                if (!firstVersion)
+                    write(',');
+                firstVersion = false;
+                write("{\"content\":\"");
+                write(version.getContent());
+                write("\", \"date\":\"");
+                write(String.valueOf(version.getDateTime()));
+                write("\"}");
+            }
+            write("]}");
+        }
+
+        void write(char c) throws IOException {
+            if (position == buffer.length)
+                flushBuffer();
+            buffer[position++] = c;
+        }
+
+        void write(String s) throws IOException {
+            int length = s.length();
+            int offset = 0;
+            while (offset < length) {
+                if (position == buffer.length)
+                    flushBuffer();
+                int chunk = Math.min(buffer.length - position, length - offset);
+                s.getChars(offset, offset + chunk, buffer, position);
+                position += chunk;
+                offset += chunk;
+            }
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
+}
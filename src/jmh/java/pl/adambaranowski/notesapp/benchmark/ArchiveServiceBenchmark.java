@@ -0,0 +1,73 @@
+package pl.adambaranowski.notesapp.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.adambaranowski.notesapp.service.ArchiveService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of archive export - building whole archive as String
+ * and streaming it into output stream (as it is done for HTTP response).
+ *
+ * @author Adam Baranowski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveServiceBenchmark {
+
+    private ArchiveService archiveService;
+
+    @Setup
+    public void setUp(NotesAppState state) {
+        archiveService = state.getBean(ArchiveService.class);
+    }
+
+    @Benchmark
+    public String getAllVersionsOfAllNotes() {
+        return archiveService.getAllVersionsOfAllNotes();
+    }
+
+    @Benchmark
+    public void writeAllVersionsOfAllNotes(Blackhole blackhole) throws IOException {
+        archiveService.writeAllVersionsOfAllNotes(new BlackholeOutputStream(blackhole));
+    }
+
+    /**
+     * Output stream which only consumes written bytes, so that JIT cannot eliminate writing
+     */
+    static class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package pl.adambaranowski.notesapp.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of note endpoints over HTTP under concurrent load, comparing execution modes
+ * ("notes.execution.mode"): blocking (requests on Tomcat threads) and async (requests on bounded worker pool).
+ * <p>
+ * Tomcat has fewer threads than there are benchmark threads, so in blocking mode requests queue for server threads.
+ * Benchmark runs in throughput and sample time mode - the latter reports percentiles (p0.99) of request latency.
+ * Status of responses is counted, e.g. 503 responses of overloaded async mode are not hidden in the score.
+ *
+ * @author Adam Baranowski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(1)
+public class NoteHttpBenchmark {
+
+    @Param({"blocking", "async"})
+    public String executionMode;
+
+    /**
+     * Maximal number of Tomcat threads
+     */
+    @Param({"16"})
+    public int serverThreads;
+
+    /**
+     * Number of notes in database
+     */
+    @Param({"1000"})
+    public int noteCount;
+
+    private ConfigurableApplicationContext context;
+
+    private HttpClient client;
+
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void startServer() {
+        context = new SpringApplicationBuilder(NotesAppApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .initializers(applicationContext -> applicationContext.getBeanFactory()
+                        .registerSingleton("testConfigurationExcludeFilter", new NotesAppState.TestConfigurationExcludeFilter()))
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.threads.max=" + serverThreads,
+                        "--notes.execution.mode=" + executionMode,
+                        "--spring.datasource.url=jdbc:h2:mem:httpbenchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN"
+                );
+
+        NoteService noteService = context.getBean(NoteService.class);
+        for (int i = 0; i < noteCount; i++) {
+            noteService.createNewNote(new NoteRequestModel(NotesAppState.title(i), NotesAppState.content(i, 1)));
+        }
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        baseUrl = "http://localhost:" + port + "/notes";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        context.close();
+    }
+
+    /**
+     * Read served mostly from NoteCache - measures overhead of request handling itself
+     */
+    @Benchmark
+    public int getByTitle(ResponseCounters counters) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/title?title="
+                + URLEncoder.encode(randomTitle(), StandardCharsets.UTF_8))).GET().build();
+        return counters.count(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    /**
+     * Write - every request waits for database
+     */
+    @Benchmark
+    public int modifyNote(ResponseCounters counters) throws IOException, InterruptedException {
+        String body = "{\"title\":\"" + randomTitle() + "\",\"content\":\"modified " + ThreadLocalRandom.current().nextInt() + "\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return counters.count(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    private String randomTitle() {
+        return NotesAppState.title(ThreadLocalRandom.current().nextInt(noteCount));
+    }
+
+    /**
+     * Per-thread numbers of responses by status, reported by JMH as secondary results
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ResponseCounters {
+
+        public long ok;
+
+        public long rejected;
+
+        public long failed;
+
+        int count(int status) {
+            if (status == 200)
+                ok++;
+            else if (status == 503)
+                rejected++;
+            else
+                failed++;
+            return status;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package pl.adambaranowski.notesapp.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteBatchResultModel;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.model.NoteResponseModel;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of NoteService operations.
+ * <p>
+ * createNewNote and modifyNote change the dataset while benchmark runs - every created note
+ * and every new version stays in database until the end of trial.
+ *
+ * @author Adam Baranowski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NoteServiceBenchmark {
+
+    private NoteService noteService;
+
+    @Setup
+    public void setUp(NotesAppState state) {
+        noteService = state.getBean(NoteService.class);
+    }
+
+    @Benchmark
+    public Note createNewNote(NotesAppState state) {
+        return noteService.createNewNote(new NoteRequestModel(state.newTitle(), "new note"));
+    }
+
+    @Benchmark
+    public void modifyNote(NotesAppState state) {
+        noteService.modifyNote(new NoteRequestModel(state.randomTitle(), "modified " + ThreadLocalRandom.current().nextInt()));
+    }
+
+    /**
+     * Score is time per single note, so results for different batch sizes can be compared directly
+     */
+    @Benchmark
+    @OperationsPerInvocation(BatchState.OPERATIONS)
+    public void saveNotes(NotesAppState state, BatchState batch) {
+        for (int i = 0; i < BatchState.OPERATIONS / batch.batchSize; i++) {
+            List<NoteRequestModel> notes = new ArrayList<>(batch.batchSize);
+            for (int j = 0; j < batch.batchSize; j++) {
+                notes.add(new NoteRequestModel(state.newTitle(), "imported note"));
+            }
+            List<NoteBatchResultModel> results = noteService.saveNotes(notes);
+            batch.consumed += results.size();
+        }
+    }
+
+    @Benchmark
+    public NoteResponseModel getByTitle(NotesAppState state) {
+        return noteService.getByTitle(state.randomTitle());
+    }
+
+    @Benchmark
+    public List<NoteResponseModel> getAllNotes() {
+        return noteService.getAllNotes();
+    }
+
+    @Benchmark
+    public List<NoteResponseModel> getAllNotesFirstPage() {
+        return noteService.getAllNotes(0, 100);
+    }
+
+    @State(Scope.Thread)
+    public static class BatchState {
+
+        /**
+         * Number of notes saved by single benchmark invocation - divisible by every batch size
+         */
+        static final int OPERATIONS = 100;
+
+        @Param({"1", "10", "100"})
+        public int batchSize;
+
+        int consumed;
+    }
+}
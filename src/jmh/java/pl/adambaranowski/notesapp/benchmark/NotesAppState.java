@@ -0,0 +1,128 @@
+package pl.adambaranowski.notesapp.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark state - whole application context running against embedded H2 database,
+ * filled with noteCount notes, each of them having versionsPerNote versions.
+ * <p>
+ * Context is started once per trial, so every combination of params gets fresh database.
+ *
+ * @author Adam Baranowski
+ */
+@State(Scope.Benchmark)
+public class NotesAppState {
+
+    /**
+     * Number of notes in database
+     */
+    @Param({"100", "1000"})
+    public int noteCount;
+
+    /**
+     * Number of versions of every note
+     */
+    @Param({"1", "10"})
+    public int versionsPerNote;
+
+    /**
+     * Size of NoteCache. 0 disables caching
+     */
+    @Param({"10000"})
+    public int cacheSize;
+
+    private ConfigurableApplicationContext context;
+
+    /**
+     * Source of unique titles for benchmarks creating new notes
+     */
+    private final AtomicLong createdNotes = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(NotesAppApplication.class)
+                .web(WebApplicationType.NONE)
+                .initializers(applicationContext -> applicationContext.getBeanFactory()
+                        .registerSingleton("testConfigurationExcludeFilter", new TestConfigurationExcludeFilter()))
+                //passed as command line arguments, because they have to override application.properties
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--notes.cache.maximum-size=" + cacheSize
+                );
+
+        NoteService noteService = getBean(NoteService.class);
+        for (int i = 0; i < noteCount; i++) {
+            noteService.createNewNote(new NoteRequestModel(title(i), content(i, 1)));
+            for (int version = 2; version <= versionsPerNote; version++) {
+                noteService.modifyNote(new NoteRequestModel(title(i), content(i, version)));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * @return title of random note from dataset
+     */
+    public String randomTitle() {
+        return title(ThreadLocalRandom.current().nextInt(noteCount));
+    }
+
+    /**
+     * @return title which has never been used
+     */
+    public String newTitle() {
+        return "created note " + createdNotes.incrementAndGet();
+    }
+
+    public static String title(int note) {
+        return "note " + note;
+    }
+
+    public static String content(int note, int version) {
+        return "content of note " + note + " in version " + version;
+    }
+
+    /**
+     * Benchmarks run with test classpath, so component scan of NotesAppApplication would pick up
+     * test configurations (e.g. of NoteServiceIntegrationTest). This filter skips them, as Spring Boot tests do.
+     */
+    static class TestConfigurationExcludeFilter extends TypeExcludeFilter {
+
+        @Override
+        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+            return metadataReader.getAnnotationMetadata().hasAnnotation(TestConfiguration.class.getName());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package pl.adambaranowski.notesapp.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.adambaranowski.notesapp.metrics.StatementCounter;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.repository.NoteVersionRepository;
+import pl.adambaranowski.notesapp.service.ArchiveService;
+import pl.adambaranowski.notesapp.service.NoteChangeLog;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of streamed archive export with number of export threads. Parallelism 1 is the sequential export.
+ * <p>
+ * Differences show up with large datasets only, e.g.:
+ * <pre>
+ *     mvn -Pbenchmark verify -DskipTests -Djmh.args="ParallelArchiveBenchmark -p noteCount=10000 -p versionsPerNote=10"
+ * </pre>
+ * Export threads share connection pool of the application (10 connections by default), so parallelism above it does not help.
+ *
+ * @author Adam Baranowski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelArchiveBenchmark {
+
+    /**
+     * Number of export threads
+     */
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    /**
+     * Number of ids in single chunk of archive
+     */
+    @Param({"100"})
+    public int pageSize;
+
+    private ArchiveService archiveService;
+
+    @Setup
+    public void createArchiveService(NotesAppState state) {
+        archiveService = new ArchiveService(
+                state.getBean(NoteRepository.class),
+                state.getBean(NoteVersionRepository.class),
+                state.getBean(NoteChangeLog.class),
+                state.getBean(ObjectMapper.class),
+                state.getBean(MeterRegistry.class),
+                state.getBean(StatementCounter.class),
+                pageSize,
+                parallelism);
+    }
+
+    @TearDown
+    public void shutdownArchiveService() {
+        archiveService.shutdown();
+    }
+
+    @Benchmark
+    public void writeAllVersionsOfAllNotes(Blackhole blackhole) throws IOException {
+        archiveService.writeAllVersionsOfAllNotes(new ArchiveServiceBenchmark.BlackholeOutputStream(blackhole));
+    }
+}
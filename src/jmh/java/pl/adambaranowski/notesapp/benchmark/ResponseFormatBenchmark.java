@@ -0,0 +1,164 @@
+package pl.adambaranowski.notesapp.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteResponseModel;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.service.ArchiveJsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of response formats - JSON against CBOR. Mappers are configured the same way as converters
+ * of the application (dates as ISO strings).
+ * <p>
+ * Datasets are a full page of notes (default page size, NoteResponseModel list as sent by /notes/getall)
+ * and an archive of notes with all their versions. Contents are generated from words of different lengths,
+ * also with non-ASCII characters. Payload sizes of both formats are printed during setup.
+ * <pre>
+ *     mvn -Pbenchmark verify -DskipTests -Djmh.args="ResponseFormatBenchmark -prof gc"
+ * </pre>
+ *
+ * @author Adam Baranowski
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseFormatBenchmark {
+
+    private static final String[] WORDS = {"note", "shopping", "list", "meeting", "tomorrow", "zażółć", "gęślą", "jaźń",
+            "2020-10-06", "42", "project", "deadline", "\"quoted\"", "e-mail", "adam@example.com", "TODO:"};
+
+    @Param({"json", "cbor"})
+    public String format;
+
+    /**
+     * Average length of content of note in characters
+     */
+    @Param({"200", "5000"})
+    public int contentLength;
+
+    /**
+     * Number of notes in page of notes
+     */
+    @Param({"100"})
+    public int pageSize;
+
+    /**
+     * Number of notes in archive, each of them has 10 versions
+     */
+    @Param({"1000"})
+    public int archiveNoteCount;
+
+    private ObjectMapper objectMapper;
+
+    private List<NoteResponseModel> page;
+
+    private List<Note> archive;
+
+    private byte[] encodedPage;
+
+    private byte[] encodedArchive;
+
+    @Setup
+    public void createDatasets() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        if ("cbor".equals(format))
+            builder.factory(new CBORFactory());
+        objectMapper = builder.build();
+
+        Random random = new Random(42);
+        LocalDateTime dateTime = LocalDateTime.of(2020, 10, 6, 19, 51, 28);
+        page = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            page.add(new NoteResponseModel((long) i + 1, NotesAppState.title(i), content(random),
+                    dateTime, dateTime.plusMinutes(i), 1 + random.nextInt(20)));
+        }
+        archive = new ArrayList<>(archiveNoteCount);
+        for (int i = 0; i < archiveNoteCount; i++) {
+            Note note = new Note(NotesAppState.title(i));
+            note.setId((long) i + 1);
+            List<NoteVersion> versions = new ArrayList<>();
+            for (int version = 1; version <= 10; version++) {
+                versions.add(new NoteVersion(version, content(random), dateTime.plusMinutes(version), note));
+            }
+            note.setNoteVersions(versions);
+            archive.add(note);
+        }
+
+        encodedPage = objectMapper.writeValueAsBytes(page);
+        ByteArrayOutputStream archiveStream = new ByteArrayOutputStream();
+        writeArchive(archiveStream);
+        encodedArchive = archiveStream.toByteArray();
+        System.out.printf("%n%s payload: page of notes %d bytes, archive %d bytes%n", format, encodedPage.length, encodedArchive.length);
+    }
+
+    @Benchmark
+    public void encodePage(Blackhole blackhole) throws IOException {
+        objectMapper.writeValue(new ArchiveServiceBenchmark.BlackholeOutputStream(blackhole), page);
+    }
+
+    @Benchmark
+    public List<NoteResponseModel> decodePage() throws IOException {
+        return objectMapper.readValue(encodedPage, new TypeReference<List<NoteResponseModel>>() {});
+    }
+
+    @Benchmark
+    public void encodeArchive(Blackhole blackhole) throws IOException {
+        writeArchive(new ArchiveServiceBenchmark.BlackholeOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public JsonNode decodeArchive() throws IOException {
+        return objectMapper.readTree(encodedArchive);
+    }
+
+    private void writeArchive(OutputStream out) throws IOException {
+        try (ArchiveJsonWriter writer = new ArchiveJsonWriter(objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8))) {
+            writer.writeStartArchive();
+            for (Note note : archive) {
+                writer.writeNote(note, note.getNoteVersions());
+            }
+            writer.writeEndArchive();
+        }
+    }
+
+    private String content(Random random) {
+        int length = contentLength / 2 + random.nextInt(contentLength);
+        StringBuilder content = new StringBuilder(length + 20);
+        while (content.length() < length) {
+            content.append(WORDS[random.nextInt(WORDS.length)]);
+            content.append(random.nextInt(10) == 0 ? '\n' : ' ');
+        }
+        return content.toString();
+    }
+}
@@ -1,12 +1,25 @@
 package pl.adambaranowski.notesapp.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.adambaranowski.notesapp.metrics.StatementCounter;
+import pl.adambaranowski.notesapp.model.ArchiveStatsModel;
+import pl.adambaranowski.notesapp.model.CompactionReportModel;
+import pl.adambaranowski.notesapp.model.NoteChangeFeedModel;
 import pl.adambaranowski.notesapp.service.ArchiveService;
+import pl.adambaranowski.notesapp.service.NoteCompactionService;
 
 
 /**
@@ -18,15 +31,119 @@ public class ArchiveController {
 
     private ArchiveService archiveService;
 
+    private NoteCompactionService noteCompactionService;
+
+    private StatementCounter statementCounter;
+
+    /**
+     * Maximal number of changes returned by single /changes request
+     */
+    private int maxChanges;
+
     @Autowired
-    public ArchiveController(ArchiveService archiveService) {
+    public ArchiveController(ArchiveService archiveService,
+                             NoteCompactionService noteCompactionService,
+                             StatementCounter statementCounter,
+                             @Value("${archive.changes.max-size:1000}") int maxChanges) {
         this.archiveService = archiveService;
+        this.noteCompactionService = noteCompactionService;
+        this.statementCounter = statementCounter;
+        this.maxChanges = maxChanges;
     }
     /**
-     * @return all versions of all notes
+     * Archive is streamed to the client while it is read from database, so
+     * it is never built as one big String in memory.
+     * <p>
+     * Response has ETag of archive revision and format (e.g. "5-json"). When client sends it back in If-None-Match header
+     * and nothing has changed since, server responses with HTTP Status Code 304 (Not Modified)
+     * without reading archive. Revision is read before streaming, so archive changed during streaming
+     * is sent with older ETag - client downloads it once again next time, it never misses a change.
+     *
+     * @param webRequest current request, used for checking If-None-Match header
+     * @return all versions of all notes, null when client has current archive (response is already 304)
      */
     @GetMapping("/getall")
-    public ResponseEntity<String> getAllNotesWithAllVersions(){
-        return new ResponseEntity<>(archiveService.getAllVersionsOfAllNotes(), HttpStatus.OK);
+    public ResponseEntity<StreamingResponseBody> getAllNotesWithAllVersions(WebRequest webRequest){
+        return archive(webRequest, MediaType.APPLICATION_JSON, archiveService::writeAllVersionsOfAllNotes);
+    }
+
+    /**
+     * The same archive as {@link #getAllNotesWithAllVersions(WebRequest)} in CBOR, for clients which accept application/cbor
+     *
+     * @param webRequest current request, used for checking If-None-Match header
+     * @return all versions of all notes, null when client has current archive (response is already 304)
+     */
+    @GetMapping(value = "/getall", produces = MediaType.APPLICATION_CBOR_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllNotesWithAllVersionsAsCbor(WebRequest webRequest){
+        return archive(webRequest, MediaType.APPLICATION_CBOR, archiveService::writeAllVersionsOfAllNotesAsCbor);
+    }
+
+    /**
+     * Change feed for incremental synchronization of archive - every version created and every deletion
+     * of note after given cursor.
+     *
+     * @param after cursor returned by previous request, 0 when not given (all changes)
+     * @param limit maximal number of changes, 100 when not given. Cannot exceed max size
+     * @return changes ordered by cursor and cursor for the next request
+     * @throws ResponseStatusException when after is negative or limit is not positive
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<NoteChangeFeedModel> getChanges(@RequestParam(defaultValue = "0") long after,
+                                                          @RequestParam(defaultValue = "100") int limit){
+        if (after < 0 || limit < 1)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "After cannot be negative and limit has to be positive!");
+        return new ResponseEntity<>(archiveService.getChanges(after, Math.min(limit, maxChanges)), HttpStatus.OK);
+    }
+
+    /**
+     * @return storage statistics of all versions of all notes
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<ArchiveStatsModel> getStats(){
+        return new ResponseEntity<>(archiveService.getStats(), HttpStatus.OK);
+    }
+
+    /**
+     * Runs compaction of archive now, regardless of its schedule. Old versions and deleted notes
+     * are removed according to retention policy.
+     *
+     * @return report of the run
+     * @throws ResponseStatusException when compaction is already running
+     */
+    @PostMapping("/compaction")
+    public ResponseEntity<CompactionReportModel> compact(){
+        try {
+            return new ResponseEntity<>(noteCompactionService.compact(), HttpStatus.OK);
+        }catch (IllegalStateException e){
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Compaction is already running!");
+        }
+    }
+
+    /**
+     * @return report of the last compaction of archive
+     * @throws ResponseStatusException when compaction has never run
+     */
+    @GetMapping("/compaction")
+    public ResponseEntity<CompactionReportModel> getLastCompaction(){
+        return noteCompactionService.getLastReport()
+                .map(report -> new ResponseEntity<>(report, HttpStatus.OK))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Compaction has never run!"));
+    }
+
+    /**
+     * JSON and CBOR archive are different representations, so ETag contains format as well as revision
+     * and response varies by Accept header - caches keep JSON and CBOR archive separately.
+     * Body is streamed by another thread, statements it sends are counted in this request explicitly.
+     */
+    private ResponseEntity<StreamingResponseBody> archive(WebRequest webRequest, MediaType mediaType, StreamingResponseBody body){
+        String eTag = "\"" + archiveService.getRevision() + "-" + mediaType.getSubtype() + "\"";
+        if (webRequest.checkNotModified(eTag))
+            return null;
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .eTag(eTag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(statementCounter.decorate(body));
     }
 }
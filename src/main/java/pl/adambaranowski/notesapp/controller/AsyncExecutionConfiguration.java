@@ -0,0 +1,129 @@
+package pl.adambaranowski.notesapp.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * "async" execution mode of note endpoints ("notes.execution.mode=async").
+ * <p>
+ * Endpoints are the same {@link NoteController} handlers as in blocking mode. Arguments of handler are resolved
+ * (and validated) on server thread, then handler method runs on worker thread of bounded pool
+ * ("notes.execution.pool-size", "notes.execution.queue-capacity") and Spring receives CompletableFuture of its result.
+ * Server thread is released as soon as request is handed over, so bursts of requests waiting for database
+ * do not exhaust server threads. Pool should be about as big as database connection pool - more workers would
+ * only wait for connections. When all workers are busy and queue is full server responses at once
+ * with HTTP Status Code 503 (Service Unavailable).
+ *
+ * @author Adam Baranowski
+ */
+@Configuration
+@ConditionalOnProperty(name = "notes.execution.mode", havingValue = "async")
+public class AsyncExecutionConfiguration implements WebMvcRegistrations {
+
+    /**
+     * Workers of note requests. It is not a bean on purpose - otherwise Spring Boot would use it
+     * as application task executor for unrelated tasks
+     */
+    private ThreadPoolTaskExecutor executor;
+
+    @Autowired
+    public AsyncExecutionConfiguration(@Value("${notes.execution.pool-size:10}") int poolSize,
+                                       @Value("${notes.execution.queue-capacity:1000}") int queueCapacity) {
+        this.executor = createExecutor(poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return adapter running handlers of NoteController on workers, handlers of other controllers are not changed
+     */
+    @Override
+    public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+        return new RequestMappingHandlerAdapter() {
+            @Override
+            protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+                if (!NoteController.class.isAssignableFrom(handlerMethod.getBeanType()))
+                    return super.createInvocableHandlerMethod(handlerMethod);
+                return new OffloadedHandlerMethod(handlerMethod);
+            }
+        };
+    }
+
+    /**
+     * Request attributes of server thread are passed to worker thread, so that code relying on them
+     * (e.g. building links from current request) works the same as in blocking mode.
+     */
+    private static ThreadPoolTaskExecutor createExecutor(int poolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("note-request-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setTaskDecorator(task -> {
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            return () -> {
+                RequestContextHolder.setRequestAttributes(attributes);
+                try {
+                    task.run();
+                } finally {
+                    RequestContextHolder.resetRequestAttributes();
+                }
+            };
+        });
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Handler method invoked on worker thread. Its result (or exception, e.g. ResponseStatusException)
+     * is handled by Spring the same way as in blocking mode, after async dispatch.
+     */
+    private class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+        OffloadedHandlerMethod(HandlerMethod handlerMethod) {
+            super(handlerMethod);
+        }
+
+        /**
+         * @throws ResponseStatusException with 503 status when executor cannot accept more requests
+         */
+        @Override
+        protected Object doInvoke(Object... args) {
+            try {
+                return CompletableFuture.supplyAsync(() -> invokeOnWorker(args), executor);
+            } catch (TaskRejectedException e) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server is overloaded, try again later!");
+            }
+        }
+
+        private Object invokeOnWorker(Object... args) {
+            try {
+                return super.doInvoke(args);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+}
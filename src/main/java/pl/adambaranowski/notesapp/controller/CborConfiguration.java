@@ -0,0 +1,28 @@
+package pl.adambaranowski.notesapp.controller;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+
+/**
+ * Binary response format for service-to-service consumers.
+ * <p>
+ * Every model returned by controllers can be sent as CBOR (application/cbor) instead of JSON - client chooses it
+ * with Accept header. CBOR has the same data model as JSON, but numbers and lengths of strings are binary,
+ * so it is smaller and cheaper to encode and decode.
+ * <p>
+ * Converter uses the same Jackson configuration as JSON responses (e.g. dates are ISO strings in both formats).
+ * JSON stays the default when client does not ask for CBOR.
+ *
+ * @author Adam Baranowski
+ */
+@Configuration
+public class CborConfiguration {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2CborHttpMessageConverter(objectMapperBuilder.factory(new CBORFactory()).build());
+    }
+}
@@ -1,35 +1,93 @@
 package pl.adambaranowski.notesapp.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import pl.adambaranowski.notesapp.exception.NoteAlreadyExistException;
+import pl.adambaranowski.notesapp.exception.NoteModificationConflictException;
 import pl.adambaranowski.notesapp.exception.NoteNotFoundException;
+import pl.adambaranowski.notesapp.exception.NoteVersionMismatchException;
 import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteBatchRequestModel;
+import pl.adambaranowski.notesapp.model.NoteBatchResultModel;
+import pl.adambaranowski.notesapp.model.NoteCacheStatsModel;
+import pl.adambaranowski.notesapp.model.NoteCreatedModel;
 import pl.adambaranowski.notesapp.model.NoteRequestModel;
 import pl.adambaranowski.notesapp.model.NoteResponseModel;
+import pl.adambaranowski.notesapp.model.NoteTitleModel;
+import pl.adambaranowski.notesapp.model.NoteVersionKey;
+import pl.adambaranowski.notesapp.model.NoteVersionModel;
+import pl.adambaranowski.notesapp.service.NoteCache;
+import pl.adambaranowski.notesapp.service.NoteSearchService;
 import pl.adambaranowski.notesapp.service.NoteService;
+import pl.adambaranowski.notesapp.service.NoteTitleIndex;
+import pl.adambaranowski.notesapp.service.NoteWriteBuffer;
 
 import javax.validation.Valid;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Main controller of note application. Responsible for processing note requests.
  * Annotation @RestController means that all of methods' return types are objects not views
+ * <p>
+ * Requests are handled on server (Tomcat) threads. It is default execution mode ("notes.execution.mode=blocking"),
+ * in "async" mode the same handlers run on worker threads (see {@link AsyncExecutionConfiguration}).
+ * <p>
+ * Responses are JSON, or CBOR when client accepts application/cbor (see {@link CborConfiguration}).
  * @author Adam Baranowski
  */
 @RestController
 @RequestMapping("/notes")
 public class NoteController {
 
+    private static final int MAX_AUTOCOMPLETE_LIMIT = 100;
+
     private NoteService noteService;
 
+    private NoteCache noteCache;
+
+    private NoteSearchService noteSearchService;
+
+    private NoteTitleIndex noteTitleIndex;
+
+    private NoteWriteBuffer noteWriteBuffer;
+
+    /**
+     * Number of notes returned by /getall when client sends "after" without "limit"
+     */
+    private int defaultPageSize;
+
+    /**
+     * Maximal number of notes returned by single /getall request
+     */
+    private int maxPageSize;
+
     @Autowired
-    public NoteController(NoteService noteService) {
+    public NoteController(NoteService noteService,
+                          NoteCache noteCache,
+                          NoteSearchService noteSearchService,
+                          NoteTitleIndex noteTitleIndex,
+                          NoteWriteBuffer noteWriteBuffer,
+                          @Value("${notes.page.default-size:100}") int defaultPageSize,
+                          @Value("${notes.page.max-size:1000}") int maxPageSize) {
         this.noteService = noteService;
+        this.noteCache = noteCache;
+        this.noteSearchService = noteSearchService;
+        this.noteTitleIndex = noteTitleIndex;
+        this.noteWriteBuffer = noteWriteBuffer;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
     /**
@@ -41,7 +99,7 @@ public class NoteController {
      * @throws ResponseStatusException - which in spring results of responsing with right HttpStatus
      */
     @PostMapping()
-    public ResponseEntity<String> addNote(@RequestBody @Valid NoteRequestModel noteRequestModel, BindingResult bindingResult){
+    public ResponseEntity<NoteCreatedModel> addNote(@RequestBody @Valid NoteRequestModel noteRequestModel, BindingResult bindingResult){
         //spring validation
         if(bindingResult.hasErrors())
             throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Title and Content cannot be empty!");
@@ -49,78 +107,276 @@ public class NoteController {
         try {
             Note newNote = noteService.createNewNote(noteRequestModel);
 
-            //manually created JSON to include Id of newly created note
-            String response = "{" +
-                    "\"id\":"+ newNote.getId()+","+
-                    "\"title\":\"" + newNote.getTitle() + "\","+
-                    "\"content\":\"" + newNote.getRecentVersion().getContent() + "\"}";
-
-            return new ResponseEntity<String>(response, HttpStatus.CREATED);
+            return new ResponseEntity<>(NoteCreatedModel.of(newNote), HttpStatus.CREATED);
 
             //noteService Exception
         }catch (NoteAlreadyExistException e){
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Given note has been already created! You can modify it!");
+        }catch (NoteModificationConflictException e){
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Note is being modified concurrently, try again!");
+        }
+    }
+
+    /**
+     * PostMapping for creating or modifying many notes at once (e.g. by importers).
+     * <p>
+     * Note of not existing title is created, for existing title new version of note is created.
+     * All notes are processed in one transaction.
+     *
+     * @param noteBatchRequestModel - model which contains list of notes (title and content)
+     * @param bindingResult - errors that have occured during validation. Spring Validation take care of this param automatically
+     * @return response entity with HttpStatus OK and JSON list of results (id, title and status) - one for every sent note, in the same order
+     * @throws ResponseStatusException - when list is empty, too long or any title or content is empty,
+     * or when concurrent modifications of the same notes did not let the batch succeed
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<NoteBatchResultModel>> saveNotes(@RequestBody @Valid NoteBatchRequestModel noteBatchRequestModel, BindingResult bindingResult){
+        if(bindingResult.hasErrors())
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Notes cannot be empty (max 1000) and no title or content can be empty!");
+
+        try {
+            return new ResponseEntity<>(noteService.saveNotes(noteBatchRequestModel.getNotes()), HttpStatus.OK);
+        }catch (NoteModificationConflictException e){
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Notes are being modified concurrently, try again!");
         }
     }
 
     /**
      * Get note by its id
+     * <p>
+     * When client sends ETag of note in If-None-Match header and note has not been modified since,
+     * server responses with HTTP Status Code 304 (Not Modified) - content of note is not loaded at all.
+     * Edit of note waiting in write-behind buffer is returned without ETag, as it is not stored version yet.
+     *
      * @param id id of wanted Note
-     * @return Note of given id in NoteResponseModel form (for JSON)
+     * @param webRequest current request, used for checking If-None-Match header
+     * @return Note of given id in NoteResponseModel form (for JSON) with ETag header of its version,
+     * null when client has current version (response is already 304)
      * @throws ResponseStatusException which results with sending proper HttpStatus
      */
     @GetMapping("/{id}")
-    public ResponseEntity<NoteResponseModel> getById(@PathVariable Long id){
+    public ResponseEntity<NoteResponseModel> getById(@PathVariable Long id, WebRequest webRequest){
         try {
-            return new ResponseEntity<>(noteService.getById(id), HttpStatus.OK);
+            if (hasIfNoneMatch(webRequest) && !noteWriteBuffer.hasPendingEdit(id)
+                    && webRequest.checkNotModified(eTagOf(id, noteService.getVersionById(id))))
+                return null;
+            return withETagOrPendingEdit(noteService.getById(id));
         }catch (NoteNotFoundException e){
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Note of given id does not exist!");
         }
     }
 
     /**
-     * Get note by its title
+     * Get note by its title. Supports If-None-Match header the same as {@link #getById(Long, WebRequest)}
      * @param title of wanted Note
-     * @return Note of given title in NoteResponseModel form (for JSON)
+     * @param webRequest current request, used for checking If-None-Match header
+     * @return Note of given title in NoteResponseModel form (for JSON) with ETag header of its version,
+     * null when client has current version (response is already 304)
      * @throws ResponseStatusException which results with sending proper HttpStatus
      */
     @GetMapping("/title")
-    public ResponseEntity<NoteResponseModel> getByTitle(@RequestParam String title){
+    public ResponseEntity<NoteResponseModel> getByTitle(@RequestParam String title, WebRequest webRequest){
         try {
-            return new ResponseEntity<>(noteService.getByTitle(title), HttpStatus.OK);
+            //with write-behind id of note is needed to check buffered edits, so note is read as a whole
+            if (hasIfNoneMatch(webRequest) && !noteWriteBuffer.isEnabled()
+                    && webRequest.checkNotModified(eTagOf(noteService.getVersionKeyByTitle(title))))
+                return null;
+            return withETagOrPendingEdit(noteService.getByTitle(title));
         }catch (NoteNotFoundException e){
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Note of given title does not exist!");
         }
     }
 
     /**
-     * Get all not-deleted notes
-     * @return list of NoteResponseModel that contains every Note which "deleted" field is false
+     * Get all not-deleted notes, or a page of them when "after" or "limit" is given.
+     * <p>
+     * Without any of these params response is the same as before pagination was introduced - complete list
+     * of notes in one response, without "Link" header - so existing clients keep working. Its cost grows with
+     * number of notes, so clients should ask for pages.
+     * <p>
+     * Notes are ordered by id. To get next page send "after" param equal to id of the last note
+     * of previous page - it is done for client by "Link" header (rel="next"), which is sent
+     * whenever the page is full and there may be more notes.
+     *
+     * @param after id of the last note of previous page, first page when only limit is given
+     * @param limit maximal number of notes in page, default page size when only after is given. Cannot exceed max page size
+     * @return list of NoteResponseModel that contains Notes which "deleted" field is false
+     * @throws ResponseStatusException when limit is not positive or after is negative
      */
     @GetMapping("/getall")
-    public ResponseEntity<List<NoteResponseModel>> getAllNotes(){
-        return new ResponseEntity<List<NoteResponseModel>>(noteService.getAllNotes(), HttpStatus.OK);
+    public ResponseEntity<List<NoteResponseModel>> getAllNotes(@RequestParam(required = false) Long after,
+                                                               @RequestParam(required = false) Integer limit){
+        if (after == null && limit == null)
+            return new ResponseEntity<>(noteService.getAllNotes(), HttpStatus.OK);
+
+        long afterId = after == null ? 0 : after;
+        int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+        if (afterId < 0 || pageSize < 1)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "After cannot be negative and limit has to be positive!");
+
+        List<NoteResponseModel> page = noteService.getAllNotes(afterId, pageSize);
+
+        HttpHeaders headers = new HttpHeaders();
+        if (page.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.get(page.size() - 1).getId())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<List<NoteResponseModel>>(page, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Full-text search of not-deleted notes. Note is found when its title or content contains
+     * all words of query (case-insensitive).
+     *
+     * @param query words to search for
+     * @param limit maximal number of notes, 20 when not given. Cannot exceed max page size
+     * @return list of found notes ordered by id
+     * @throws ResponseStatusException when limit is not positive
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<NoteResponseModel>> search(@RequestParam String query,
+                                                          @RequestParam(defaultValue = "20") int limit){
+        if (limit < 1)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit has to be positive!");
+        return new ResponseEntity<>(noteSearchService.search(query, Math.min(limit, maxPageSize)), HttpStatus.OK);
+    }
+
+    /**
+     * Titles of not-deleted notes starting with given prefix (case-insensitive), for autocompletion.
+     * Served from in-memory index, database is not queried.
+     *
+     * @param prefix beginning of title
+     * @param limit maximal number of titles, 10 when not given. Cannot exceed 100
+     * @return list of ids and titles ordered alphabetically
+     * @throws ResponseStatusException when limit is not positive
+     */
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<NoteTitleModel>> autocomplete(@RequestParam String prefix,
+                                                             @RequestParam(defaultValue = "10") int limit){
+        if (limit < 1)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit has to be positive!");
+        return new ResponseEntity<>(noteTitleIndex.findByPrefix(prefix, Math.min(limit, MAX_AUTOCOMPLETE_LIMIT)), HttpStatus.OK);
+    }
+
+    /**
+     * Get page of version history of note (also deleted one), newest versions first. Contents are not sent -
+     * single version is fetched with {@link #getVersion(Long, int)}.
+     * <p>
+     * To get next page send "before" param equal to the last version of previous page - it is done for client
+     * by "Link" header (rel="next"), which is sent whenever the page is full and there may be more versions.
+     *
+     * @param id id of Note
+     * @param before version identifier of the last version of previous page, first page when not given
+     * @param limit maximal number of versions in page, default page size when not given. Cannot exceed max page size
+     * @return list of NoteVersionModel - version identifier, creation time and size of every version
+     * @throws ResponseStatusException when limit is not positive or note does not exist
+     */
+    @GetMapping("/{id}/versions")
+    public ResponseEntity<List<NoteVersionModel>> getHistory(@PathVariable Long id,
+                                                             @RequestParam(required = false) Integer before,
+                                                             @RequestParam(required = false) Integer limit){
+        int beforeVersion = before == null ? Integer.MAX_VALUE : before;
+        int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+        if (pageSize < 1)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit has to be positive!");
+
+        List<NoteVersionModel> page;
+        try {
+            page = noteService.getHistory(id, beforeVersion, pageSize);
+        }catch (NoteNotFoundException e){
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Note of given id does not exist!");
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        if (page.size() == pageSize) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("before", page.get(page.size() - 1).getVersion())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<List<NoteVersionModel>>(page, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Get note (also deleted one) as it was in given version. Version never changes, so it is sent with its ETag.
+     *
+     * @param id id of Note
+     * @param version version identifier
+     * @return Note with content, modification time and version identifier of given version
+     * @throws ResponseStatusException when note or its version does not exist
+     */
+    @GetMapping("/{id}/versions/{version}")
+    public ResponseEntity<NoteResponseModel> getVersion(@PathVariable Long id, @PathVariable int version){
+        try {
+            return okWithETag(id, version).body(noteService.getAtVersion(id, version));
+        }catch (NoteNotFoundException e){
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Note of given id does not have such version!");
+        }
+    }
+
+    /**
+     * Get note (also deleted one) as it was at given time - in the newest version created not later than that.
+     *
+     * @param id id of Note
+     * @param time point in time in ISO format, e.g. 2020-10-06T19:51:28
+     * @return Note with content, modification time and version identifier of version current at given time
+     * @throws ResponseStatusException when note does not exist or has not existed yet at given time
+     */
+    @GetMapping("/{id}/versions/at")
+    public ResponseEntity<NoteResponseModel> getVersionAt(@PathVariable Long id,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime time){
+        try {
+            NoteResponseModel note = noteService.getAtTime(id, time);
+            return okWithETag(id, note.getVersion()).body(note);
+        }catch (NoteNotFoundException e){
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Note of given id did not exist at given time!");
+        }
     }
 
     /**
      *  Mapping for updating Note.
      *
      *  Content of Note of title given in noteRequestModel is changed into content sent in it
+     *  <p>
+     *  Update can be conditional - when request has If-Match header with ETag of note (received with GET),
+     *  note is modified only when it has not been modified since, otherwise server responses with
+     *  HTTP Status Code 412 (Precondition Failed). It prevents overwriting changes of other users.
+     *  <p>
+     *  With write-behind enabled, unconditional update is only buffered and server responses with
+     *  HTTP Status Code 202 (Accepted) without ETag. Conditional update flushes the buffer first and is written at once.
      *
      * @param noteRequestModel model which contains title and content of modified note
      * @param bindingResult errors that have occured during validation. Spring Validation take care of this param automatically
-     * @return proper HttpStatus
+     * @param ifMatch ETag of the version which is modified, "*" or no header to modify any version
+     * @return proper HttpStatus and ETag header of new version
      * @throws ResponseStatusException which in spring results of responsing with right HttpStatus
      */
     @PutMapping
-    public ResponseEntity<?> modifyNote(@Valid @RequestBody NoteRequestModel noteRequestModel, BindingResult bindingResult){
+    public ResponseEntity<?> modifyNote(@Valid @RequestBody NoteRequestModel noteRequestModel, BindingResult bindingResult,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
         if(bindingResult.hasErrors())
             throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Title and Content cannot be empty!");
         try {
-            noteService.modifyNote(noteRequestModel);
-            return new ResponseEntity(HttpStatus.OK);
+            NoteVersionKey expectedVersion = parseIfMatch(ifMatch);
+            if (noteWriteBuffer.isEnabled()) {
+                if (expectedVersion == null) {
+                    noteWriteBuffer.modify(noteRequestModel);
+                    return new ResponseEntity(HttpStatus.ACCEPTED);
+                }
+                noteWriteBuffer.flush();
+            }
+            NoteVersionKey version = noteService.modifyNote(noteRequestModel, expectedVersion);
+            return ResponseEntity.ok().eTag(eTagOf(version)).build();
         }catch (NoteNotFoundException e){
             throw new ResponseStatusException(HttpStatus.NO_CONTENT, "Note of given title does not exist!");
+        }catch (NoteVersionMismatchException e){
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Note has been modified in the meantime!");
+        }catch (NoteModificationConflictException e){
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Note is being modified concurrently, try again!");
         }
     }
 
@@ -155,4 +411,71 @@ public class NoteController {
             throw new ResponseStatusException(HttpStatus.NO_CONTENT, "Note of given title does not exist!");
         }
     }
+
+    /**
+     * Statistics of note cache - useful for sizing it (notes.cache.maximum-size)
+     * @return hits, misses, evictions and size of caches of notes by id ("byId") and by title ("byTitle")
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, NoteCacheStatsModel>> getCacheStats(){
+        Map<String, NoteCacheStatsModel> stats = new LinkedHashMap<>();
+        stats.put("byId", noteCache.getByIdStats());
+        stats.put("byTitle", noteCache.getByTitleStats());
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * Response with note and its ETag - strong ETag of the most recent version of note.
+     * Note with edit waiting in write-behind buffer is sent with buffered content and without ETag.
+     */
+    private ResponseEntity<NoteResponseModel> withETagOrPendingEdit(NoteResponseModel note){
+        if (noteWriteBuffer.hasPendingEdit(note.getId()))
+            return ResponseEntity.ok(noteWriteBuffer.overlay(note));
+        return okWithETag(note.getId(), note.getVersion()).body(note);
+    }
+
+    /**
+     * The same ETag is sent in JSON and CBOR response, so response varies by Accept header
+     */
+    private static ResponseEntity.BodyBuilder okWithETag(Long id, int version){
+        return ResponseEntity.ok().eTag(eTagOf(id, version)).varyBy(HttpHeaders.ACCEPT);
+    }
+
+    /**
+     * Version of note is looked up only for conditional requests
+     */
+    private static boolean hasIfNoneMatch(WebRequest webRequest){
+        return webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null;
+    }
+
+    /**
+     * ETag of version is "id-version" - version identifier alone is reused by note created with title of purged note
+     */
+    private static String eTagOf(Long id, int version){
+        return eTagOf(new NoteVersionKey(id, version));
+    }
+
+    private static String eTagOf(NoteVersionKey version){
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * @param ifMatch value of If-Match header - single strong ETag
+     * @return expected version of note, null when any version can be modified
+     * @throws ResponseStatusException with 412 status when header is not ETag of any version (e.g. weak ETag)
+     */
+    private static NoteVersionKey parseIfMatch(String ifMatch){
+        if (ifMatch == null || ifMatch.trim().equals("*"))
+            return null;
+        String eTag = ifMatch.trim();
+        try {
+            int separator = eTag.indexOf('-');
+            if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"") && separator > 1)
+                return new NoteVersionKey(Long.valueOf(eTag.substring(1, separator)),
+                        Integer.parseInt(eTag.substring(separator + 1, eTag.length() - 1)));
+        }catch (NumberFormatException e){
+            //not ETag of this application
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "If-Match has to be ETag of note!");
+    }
 }
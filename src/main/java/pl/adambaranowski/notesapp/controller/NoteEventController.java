@@ -0,0 +1,45 @@
+package pl.adambaranowski.notesapp.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pl.adambaranowski.notesapp.service.NoteEventBroadcaster;
+
+/**
+ * Controller for subscribing to changes of notes (Server-Sent Events)
+ *
+ * @author Adam Baranowski
+ */
+@RestController
+@RequestMapping("/notes")
+public class NoteEventController {
+
+    private NoteEventBroadcaster noteEventBroadcaster;
+
+    @Autowired
+    public NoteEventController(NoteEventBroadcaster noteEventBroadcaster) {
+        this.noteEventBroadcaster = noteEventBroadcaster;
+    }
+
+    /**
+     * Subscription to committed changes of notes. Every change is sent as event named "created", "modified"
+     * or "deleted" with JSON data (noteId, title, content, versionNumber, changeId). Events have no id - they are
+     * not ordered by changeId, so client resumes from its own cursor of change feed (/archive/changes).
+     *
+     * @return stream of events, kept open until timeout, client disconnection or overflow of its queue
+     * @throws ResponseStatusException with 503 status when there are too many subscribers
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(){
+        try {
+            return noteEventBroadcaster.subscribe();
+        }catch (IllegalStateException e){
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers, try again later!");
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package pl.adambaranowski.notesapp.exception;
+
+/**
+ * Exception being thrown, when modification of Note kept conflicting with concurrent modifications
+ * of the same Note and all retries have been used
+ */
+public class NoteModificationConflictException extends RuntimeException {
+
+    public NoteModificationConflictException(Throwable cause) {
+        super(cause);
+    }
+}
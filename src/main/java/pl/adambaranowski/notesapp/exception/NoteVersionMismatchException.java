@@ -0,0 +1,9 @@
+package pl.adambaranowski.notesapp.exception;
+
+/**
+ * Exception being thrown, when user modifies Note conditionally (If-Match) and the most recent version
+ * of Note is different from the expected one - Note has been modified in the meantime
+ */
+public class NoteVersionMismatchException extends RuntimeException {
+
+}
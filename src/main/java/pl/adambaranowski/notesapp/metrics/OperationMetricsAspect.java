@@ -0,0 +1,100 @@
+package pl.adambaranowski.notesapp.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures latency and count of every public method of services ("notes.service" timer) and of every
+ * repository method ("notes.repository" timer), tagged with class and method name. Percentiles of
+ * both timers are configured with "management.metrics.distribution.percentiles.notes" property.
+ * <p>
+ * Timers are registered once per method and cached, so measuring costs two clock reads and one map lookup.
+ * Failed calls are measured by separate timers tagged with exception.
+ *
+ * @author Adam Baranowski
+ */
+@Aspect
+@Component
+public class OperationMetricsAspect {
+
+    static final String SERVICE_TIMER = "notes.service";
+
+    static final String REPOSITORY_TIMER = "notes.repository";
+
+    private static final String NO_EXCEPTION = "none";
+
+    private MeterRegistry meterRegistry;
+
+    /**
+     * class of advised bean -> method -> timer of successful calls
+     */
+    private final Map<Class<?>, Map<Method, Timer>> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OperationMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * pl.adambaranowski.notesapp.service..*Service.*(..))")
+    public Object measureService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure(SERVICE_TIMER, joinPoint);
+    }
+
+    /**
+     * Methods inherited from Spring Data interfaces (e.g. findById) are measured as well
+     */
+    @Around("execution(public * org.springframework.data.repository.Repository+.*(..))")
+    public Object measureRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure(REPOSITORY_TIMER, joinPoint);
+    }
+
+    private Object measure(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            timerOf(name, joinPoint).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            Timer.builder(name)
+                    .tag("class", classNameOf(joinPoint))
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer timerOf(String name, ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return timers.computeIfAbsent(joinPoint.getThis().getClass(), type -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> Timer.builder(name)
+                        .tag("class", classNameOf(joinPoint))
+                        .tag("method", method.getName())
+                        .tag("exception", NO_EXCEPTION)
+                        .register(meterRegistry));
+    }
+
+    /**
+     * @return name of service class or of repository interface (repository is known only by its proxy)
+     */
+    private static String classNameOf(ProceedingJoinPoint joinPoint) {
+        Class<?> type = joinPoint.getThis().getClass();
+        for (Class<?> implemented : type.getInterfaces()) {
+            if (implemented.getPackage().getName().startsWith("pl.adambaranowski.notesapp"))
+                return implemented.getSimpleName();
+        }
+        return joinPoint.getSignature().getDeclaringType().getSimpleName();
+    }
+}
@@ -0,0 +1,93 @@
+package pl.adambaranowski.notesapp.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records number of SQL statements of every HTTP request ("notes.request.statements" summary, tagged with
+ * uri template of handler, e.g. "/notes/{id}").
+ * <p>
+ * Asynchronously handled request is recorded when it is completed - after its async dispatch.
+ * <p>
+ * Request which has sent more statements than "notes.statements.request-budget" is logged and counted
+ * ("notes.request.statements.over.budget" counter), so that N+1 queries are noticed before they become slow.
+ *
+ * @author Adam Baranowski
+ */
+@Component
+public class StatementCountFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementCountFilter.class);
+
+    private static final String UNKNOWN_URI = "UNKNOWN";
+
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Maximal expected number of statements of single request
+     */
+    private int requestBudget;
+
+    /**
+     * uri template -> summary
+     */
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StatementCountFilter(MeterRegistry meterRegistry,
+                                @Value("${notes.statements.request-budget:50}") int requestBudget) {
+        this.meterRegistry = meterRegistry;
+        this.requestBudget = requestBudget;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        //the same counter for initial and async dispatch
+        if (request.getAttribute(StatementCounter.REQUEST_ATTRIBUTE) == null)
+            request.setAttribute(StatementCounter.REQUEST_ATTRIBUTE, new AtomicInteger());
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (!isAsyncStarted(request))
+                record(request);
+        }
+    }
+
+    private void record(HttpServletRequest request) {
+        AtomicInteger count = (AtomicInteger) request.getAttribute(StatementCounter.REQUEST_ATTRIBUTE);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : UNKNOWN_URI;
+        summaries.computeIfAbsent(uri, key -> DistributionSummary.builder("notes.request.statements")
+                .description("SQL statements sent to database by single HTTP request")
+                .tag("uri", key)
+                .register(meterRegistry))
+                .record(count.get());
+
+        if (count.get() > requestBudget) {
+            log.warn("{} {} has sent {} SQL statements, budget is {}", request.getMethod(), uri, count.get(), requestBudget);
+            meterRegistry.counter("notes.request.statements.over.budget", "uri", uri).increment();
+        }
+    }
+}
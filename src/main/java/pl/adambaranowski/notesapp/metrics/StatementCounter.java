@@ -0,0 +1,231 @@
+package pl.adambaranowski.notesapp.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts SQL statements sent by Hibernate - registered as Hibernate StatementInspector, so every statement
+ * is seen, whichever repository or query has created it.
+ * <p>
+ * Statements are counted by type ("notes.db.statements" counter) and per HTTP request
+ * (see {@link StatementCountFilter}) - growing number of statements per request is the sign of N+1 queries.
+ * Statement of JDBC batch is counted once, as it is prepared once.
+ * <p>
+ * Statements sent for request by other threads than the one handling it (streamed response body, tasks of
+ * export executor) are counted in the request only when counter is passed to them explicitly -
+ * with {@link #decorate(StreamingResponseBody)} or by using this class as TaskDecorator of executor.
+ * <p>
+ * Statements of any piece of code can be counted with {@link #startCounting()}, e.g. in tests:
+ * <pre>
+ * try (StatementCounter.Scope statements = statementCounter.startCounting()) {
+ *     noteService.getAllNotes(0, 100);
+ *     assertThat(statements.get(), equalTo(1));
+ * }
+ * </pre>
+ *
+ * @author Adam Baranowski
+ */
+@Component
+public class StatementCounter implements StatementInspector, HibernatePropertiesCustomizer, TaskDecorator {
+
+    /**
+     * Attribute of HTTP request keeping number of its statements. It is read from the request itself
+     * (not from request scope), so statements of asynchronously handled request are counted as well.
+     */
+    static final String REQUEST_ATTRIBUTE = StatementCounter.class.getName() + ".count";
+
+    private final Counter selects;
+
+    private final Counter inserts;
+
+    private final Counter updates;
+
+    private final Counter deletes;
+
+    private final Counter others;
+
+    /**
+     * Counting started on current thread by {@link #startCounting()}
+     */
+    private final ThreadLocal<Scope> scopes = new ThreadLocal<>();
+
+    /**
+     * Counter of HTTP request installed on thread working for it, see {@link #decorate(Runnable)}
+     */
+    private final ThreadLocal<AtomicInteger> requestCounts = new ThreadLocal<>();
+
+    @Autowired
+    public StatementCounter(MeterRegistry meterRegistry) {
+        this.selects = counter(meterRegistry, "select");
+        this.inserts = counter(meterRegistry, "insert");
+        this.updates = counter(meterRegistry, "update");
+        this.deletes = counter(meterRegistry, "delete");
+        this.others = counter(meterRegistry, "other");
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    /**
+     * @param sql statement prepared by Hibernate
+     * @return the same statement - it is never changed
+     */
+    @Override
+    public String inspect(String sql) {
+        counterOf(sql).increment();
+        Scope scope = scopes.get();
+        if (scope != null)
+            scope.count++;
+        AtomicInteger requestCount = currentRequestCount();
+        if (requestCount != null)
+            requestCount.incrementAndGet();
+        return sql;
+    }
+
+    /**
+     * Makes statements of task count in HTTP request which has submitted it. Counter is captured when task
+     * is submitted - on thread of the request.
+     *
+     * @param task task submitted to executor
+     * @return task counting its statements in current request, the same task outside of request
+     */
+    @Override
+    public Runnable decorate(Runnable task) {
+        AtomicInteger requestCount = currentRequestCount();
+        if (requestCount == null)
+            return task;
+        return () -> {
+            AtomicInteger previous = requestCounts.get();
+            requestCounts.set(requestCount);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * The same as {@link #decorate(Runnable)} for response body, which is written by another thread
+     * after handler has returned. It has to be called by the handler.
+     *
+     * @param body response body
+     * @return body counting its statements in current request, the same body outside of request
+     */
+    public StreamingResponseBody decorate(StreamingResponseBody body) {
+        AtomicInteger requestCount = currentRequestCount();
+        if (requestCount == null)
+            return body;
+        return outputStream -> {
+            AtomicInteger previous = requestCounts.get();
+            requestCounts.set(requestCount);
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Starts counting statements sent by current thread, until returned scope is closed.
+     * Scopes are not nested - starting new one ends the previous one.
+     *
+     * @return scope which number of statements can be read from
+     */
+    public Scope startCounting() {
+        Scope scope = new Scope();
+        scopes.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return counter installed on current thread, or counter of request bound to it, null outside of request
+     */
+    private AtomicInteger currentRequestCount() {
+        AtomicInteger installed = requestCounts.get();
+        if (installed != null)
+            return installed;
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            Object count = ((ServletRequestAttributes) attributes).getRequest().getAttribute(REQUEST_ATTRIBUTE);
+            if (count instanceof AtomicInteger)
+                return (AtomicInteger) count;
+        }
+        return null;
+    }
+
+    private void restore(AtomicInteger previous) {
+        if (previous == null)
+            requestCounts.remove();
+        else
+            requestCounts.set(previous);
+    }
+
+    private Counter counterOf(String sql) {
+        String statement = sql.stripLeading();
+        int end = statement.indexOf(' ');
+        switch ((end < 0 ? statement : statement.substring(0, end)).toLowerCase(Locale.ROOT)) {
+            case "select":
+                return selects;
+            case "insert":
+                return inserts;
+            case "update":
+                return updates;
+            case "delete":
+                return deletes;
+            default:
+                return others;
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String type) {
+        return Counter.builder("notes.db.statements")
+                .description("SQL statements sent to database")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Statements counted on single thread
+     */
+    public final class Scope implements AutoCloseable {
+
+        private int count;
+
+        private Scope() {
+        }
+
+        /**
+         * @return number of statements sent since counting has started
+         */
+        public int get() {
+            return count;
+        }
+
+        /**
+         * Stops counting - number of statements does not change anymore
+         */
+        @Override
+        public void close() {
+            if (scopes.get() == this)
+                scopes.remove();
+        }
+    }
+}
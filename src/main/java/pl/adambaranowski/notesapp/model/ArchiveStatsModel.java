@@ -0,0 +1,69 @@
+package pl.adambaranowski.notesapp.model;
+
+/**
+ * Storage statistics of all note versions, used for sending JSON responses.
+ * <p>
+ * Statistics have the following JSON form:
+ * {
+ * "versions": 1200,
+ * "snapshots": 80,
+ * "contentBytes": 5400000,
+ * "storedBytes": 610000,
+ * "storedBytesPerVersion": 508.3
+ * }
+ * Contains necessary constructors and getters.
+ *
+ * @author Adam Baranowski
+ */
+public class ArchiveStatsModel {
+
+    /**
+     * Number of all versions of all notes
+     */
+    private long versions;
+
+    /**
+     * Number of versions stored with full content
+     */
+    private long snapshots;
+
+    /**
+     * Size (UTF-8 bytes) of full content of all versions - what would be stored without deltas
+     */
+    private long contentBytes;
+
+    /**
+     * Size (UTF-8 bytes) of really stored content of all versions
+     */
+    private long storedBytes;
+
+    public ArchiveStatsModel(long versions, long snapshots, long contentBytes, long storedBytes) {
+        this.versions = versions;
+        this.snapshots = snapshots;
+        this.contentBytes = contentBytes;
+        this.storedBytes = storedBytes;
+    }
+
+    public ArchiveStatsModel() {
+    }
+
+    public long getVersions() {
+        return versions;
+    }
+
+    public long getSnapshots() {
+        return snapshots;
+    }
+
+    public long getContentBytes() {
+        return contentBytes;
+    }
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    public double getStoredBytesPerVersion() {
+        return versions == 0 ? 0 : (double) storedBytes / versions;
+    }
+}
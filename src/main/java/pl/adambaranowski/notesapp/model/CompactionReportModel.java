@@ -0,0 +1,137 @@
+package pl.adambaranowski.notesapp.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Report of compaction run, used for sending JSON responses.
+ * <p>
+ * Report has the following JSON form:
+ * {
+ * "started": "2020-10-07T03:30:00",
+ * "finished": "2020-10-07T03:30:12",
+ * "durationMillis": 12250,
+ * "notesCompacted": 340,
+ * "versionsRemoved": 5120,
+ * "versionsRebased": 210,
+ * "notesPurged": 12,
+ * "changesRemoved": 5190,
+ * "failedBatches": 0
+ * }
+ * "finished" is null while run is in progress.
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class CompactionReportModel {
+
+    private LocalDateTime started;
+
+    private LocalDateTime finished;
+
+    private long durationMillis;
+
+    private long notesCompacted;
+
+    private long versionsRemoved;
+
+    private long versionsRebased;
+
+    private long notesPurged;
+
+    private long changesRemoved;
+
+    private long failedBatches;
+
+    public CompactionReportModel() {
+    }
+
+    /**
+     * @param run stored run of compaction
+     * @return report of the run
+     */
+    public static CompactionReportModel of(CompactionRun run) {
+        CompactionReportModel report = new CompactionReportModel();
+        report.started = run.getStarted();
+        report.finished = run.getFinished();
+        report.durationMillis = run.getDurationMillis();
+        report.notesCompacted = run.getNotesCompacted();
+        report.versionsRemoved = run.getVersionsRemoved();
+        report.versionsRebased = run.getVersionsRebased();
+        report.notesPurged = run.getNotesPurged();
+        report.changesRemoved = run.getChangesRemoved();
+        report.failedBatches = run.getFailedBatches();
+        return report;
+    }
+
+    public LocalDateTime getStarted() {
+        return started;
+    }
+
+    public void setStarted(LocalDateTime started) {
+        this.started = started;
+    }
+
+    public LocalDateTime getFinished() {
+        return finished;
+    }
+
+    public void setFinished(LocalDateTime finished) {
+        this.finished = finished;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getNotesCompacted() {
+        return notesCompacted;
+    }
+
+    public void setNotesCompacted(long notesCompacted) {
+        this.notesCompacted = notesCompacted;
+    }
+
+    public long getVersionsRemoved() {
+        return versionsRemoved;
+    }
+
+    public void setVersionsRemoved(long versionsRemoved) {
+        this.versionsRemoved = versionsRemoved;
+    }
+
+    public long getVersionsRebased() {
+        return versionsRebased;
+    }
+
+    public void setVersionsRebased(long versionsRebased) {
+        this.versionsRebased = versionsRebased;
+    }
+
+    public long getNotesPurged() {
+        return notesPurged;
+    }
+
+    public void setNotesPurged(long notesPurged) {
+        this.notesPurged = notesPurged;
+    }
+
+    public long getChangesRemoved() {
+        return changesRemoved;
+    }
+
+    public void setChangesRemoved(long changesRemoved) {
+        this.changesRemoved = changesRemoved;
+    }
+
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    public void setFailedBatches(long failedBatches) {
+        this.failedBatches = failedBatches;
+    }
+}
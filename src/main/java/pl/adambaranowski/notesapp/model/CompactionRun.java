@@ -0,0 +1,163 @@
+package pl.adambaranowski.notesapp.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Java Bean model of single run of compaction (see NoteCompactionService) for Hibernate.
+ * <p>
+ * Counters are updated in the same transaction as every compacted batch, so report of interrupted run
+ * still tells what has been reclaimed.
+ * <p>
+ * Contains constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+@Entity
+public class CompactionRun implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "compaction_run_sequence")
+    @SequenceGenerator(name = "compaction_run_sequence", sequenceName = "compaction_run_sequence", allocationSize = 1)
+    private Long id;
+
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime started;
+
+    /**
+     * Null while run is in progress (or when it has been interrupted)
+     */
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime finished;
+
+    private long durationMillis;
+
+    /**
+     * Number of Notes which have lost some versions
+     */
+    private long notesCompacted;
+
+    private long versionsRemoved;
+
+    /**
+     * Number of kept delta versions which had to be stored again, because their base snapshot has been removed
+     */
+    private long versionsRebased;
+
+    /**
+     * Number of deleted Notes removed from database together with all their versions
+     */
+    private long notesPurged;
+
+    /**
+     * Number of removed entries of change log - changes of removed versions and purged Notes
+     */
+    private long changesRemoved;
+
+    /**
+     * Number of batches given up after conflicts with live modifications - they are compacted by the next run
+     */
+    private long failedBatches;
+
+    /**
+     * Part of archive revision lost by purging Notes. Revision is counted from Notes (see NoteRepository),
+     * so without it revision would go back after purge.
+     */
+    private long revisionOffset;
+
+    public CompactionRun() {
+    }
+
+    public CompactionRun(LocalDateTime started) {
+        this.started = started;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getStarted() {
+        return started;
+    }
+
+    public void setStarted(LocalDateTime started) {
+        this.started = started;
+    }
+
+    public LocalDateTime getFinished() {
+        return finished;
+    }
+
+    public void setFinished(LocalDateTime finished) {
+        this.finished = finished;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getNotesCompacted() {
+        return notesCompacted;
+    }
+
+    public void setNotesCompacted(long notesCompacted) {
+        this.notesCompacted = notesCompacted;
+    }
+
+    public long getVersionsRemoved() {
+        return versionsRemoved;
+    }
+
+    public void setVersionsRemoved(long versionsRemoved) {
+        this.versionsRemoved = versionsRemoved;
+    }
+
+    public long getVersionsRebased() {
+        return versionsRebased;
+    }
+
+    public void setVersionsRebased(long versionsRebased) {
+        this.versionsRebased = versionsRebased;
+    }
+
+    public long getNotesPurged() {
+        return notesPurged;
+    }
+
+    public void setNotesPurged(long notesPurged) {
+        this.notesPurged = notesPurged;
+    }
+
+    public long getChangesRemoved() {
+        return changesRemoved;
+    }
+
+    public void setChangesRemoved(long changesRemoved) {
+        this.changesRemoved = changesRemoved;
+    }
+
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    public void setFailedBatches(long failedBatches) {
+        this.failedBatches = failedBatches;
+    }
+
+    public long getRevisionOffset() {
+        return revisionOffset;
+    }
+
+    public void setRevisionOffset(long revisionOffset) {
+        this.revisionOffset = revisionOffset;
+    }
+}
@@ -0,0 +1,112 @@
+package pl.adambaranowski.notesapp.model;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * JPA converter storing text columns (content of notes) as binary, compressed when they are big.
+ * <p>
+ * Stored value starts with one byte telling how the rest is encoded:
+ * 0 - plain UTF-8, 1 - UTF-8 compressed with Deflate. Texts shorter than threshold are not compressed,
+ * because for them compression costs more than it saves. Compressed form is kept only when it is really smaller.
+ * <p>
+ * Hibernate creates converter through Spring, so threshold is taken from "notes.compression.threshold" property.
+ *
+ * @author Adam Baranowski
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+
+    private static final byte PLAIN = 0;
+
+    private static final byte DEFLATED = 1;
+
+    /**
+     * Minimal size (UTF-8 bytes) of text which is compressed
+     */
+    private final int threshold;
+
+    public CompressedTextConverter() {
+        this(1024);
+    }
+
+    @Autowired
+    public CompressedTextConverter(@Value("${notes.compression.threshold:1024}") int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(String text) {
+        if (text == null)
+            return null;
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length >= threshold) {
+            byte[] deflated = deflate(utf8);
+            if (deflated.length < utf8.length)
+                return withHeader(DEFLATED, deflated);
+        }
+        return withHeader(PLAIN, utf8);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] stored) {
+        if (stored == null)
+            return null;
+        byte[] utf8 = Arrays.copyOfRange(stored, 1, stored.length);
+        if (stored[0] == DEFLATED)
+            utf8 = inflate(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] withHeader(byte header, byte[] data) {
+        byte[] stored = new byte[data.length + 1];
+        stored[0] = header;
+        System.arraycopy(data, 0, stored, 1, data.length);
+        return stored;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && inflater.needsInput())
+                    throw new IllegalStateException("Compressed note content is truncated");
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed note content is corrupted", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package pl.adambaranowski.notesapp.model;
+
+/**
+ * Compact difference between two contents of Note.
+ * <p>
+ * Edits of notes are usually local (appending text, fixing a word), so content of the new version
+ * is described as: first prefixLength characters of base content, then inserted text,
+ * then last suffixLength characters of base content. Only inserted text and two numbers are stored.
+ *
+ * @author Adam Baranowski
+ */
+public final class ContentDelta {
+
+    private final int prefixLength;
+
+    private final int suffixLength;
+
+    private final String insertion;
+
+    public ContentDelta(int prefixLength, int suffixLength, String insertion) {
+        this.prefixLength = prefixLength;
+        this.suffixLength = suffixLength;
+        this.insertion = insertion;
+    }
+
+    /**
+     * Computes delta which turns base into target.
+     * Common prefix and suffix never split surrogate pair, so insertion is always valid text.
+     *
+     * @param base   content of base version
+     * @param target new content
+     * @return delta between base and target
+     */
+    public static ContentDelta between(String base, String target) {
+        int maxCommon = Math.min(base.length(), target.length());
+
+        int prefix = 0;
+        while (prefix < maxCommon && base.charAt(prefix) == target.charAt(prefix))
+            prefix++;
+        if (prefix > 0 && Character.isHighSurrogate(target.charAt(prefix - 1)))
+            prefix--;
+
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+                && base.charAt(base.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix))
+            suffix++;
+        if (suffix > 0 && Character.isLowSurrogate(target.charAt(target.length() - suffix)))
+            suffix--;
+
+        return new ContentDelta(prefix, suffix, target.substring(prefix, target.length() - suffix));
+    }
+
+    /**
+     * @param base content of base version - the same which delta was computed from
+     * @return rebuilt content
+     */
+    public String applyTo(String base) {
+        return new StringBuilder(prefixLength + insertion.length() + suffixLength)
+                .append(base, 0, prefixLength)
+                .append(insertion)
+                .append(base, base.length() - suffixLength, base.length())
+                .toString();
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    public int getSuffixLength() {
+        return suffixLength;
+    }
+
+    public String getInsertion() {
+        return insertion;
+    }
+}
@@ -2,6 +2,7 @@ package pl.adambaranowski.notesapp.model;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,18 +13,37 @@ import java.util.List;
  * @author Adam Baranowski
  */
 @Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(name = Note.TITLE_CONSTRAINT, columnNames = "title"),
+        indexes = @Index(name = "idx_note_deleted_id", columnList = "deleted, id")
+)
 public class Note implements Serializable {
 
     /**
-     * Database main key - autogenerated by database engine
+     * Name of unique index on title
+     */
+    public static final String TITLE_CONSTRAINT = "uk_note_title";
+
+    /**
+     * Database main key - taken from database sequence.
+     * <p>
+     * Hibernate reserves 50 ids with single sequence call (pooled optimizer), so it knows ids of new rows
+     * before inserting them and can send inserts to the database in JDBC batches.
+     * For databases without sequences (MySQL) the sequence is emulated with a table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "note_sequence")
+    @SequenceGenerator(name = "note_sequence", sequenceName = "note_sequence", allocationSize = 50)
     private Long id;
 
     /**
-     * Title of note, the same for all versions of given note
+     * Title of note, the same for all versions of given note.
+     * <p>
+     * Titles are unique - database keeps unique index on this column, so finding Note by title
+     * does not scan the whole table and two Notes of the same title can never be inserted,
+     * even by concurrent requests.
      */
+    @Column(nullable = false)
     private String title;
 
     /**
@@ -32,14 +52,59 @@ public class Note implements Serializable {
      */
     private boolean deleted = false;
 
+    /**
+     * Time of deletion, null for not-deleted Note. Deleted Notes are purged by NoteCompactionService
+     * some time after deletion.
+     */
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime deletedAt;
+
+    /**
+     * Creation time - dateTime of first NoteVersion.
+     * <p>
+     * This and the following "recent" fields are denormalized copies of first and last NoteVersion.
+     * Thanks to them reading Note does not need to load any NoteVersion, so it costs the same
+     * no matter how many times Note has been modified.
+     */
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime created;
+
+    /**
+     * Last modification time - dateTime of last NoteVersion
+     */
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime modified;
+
+    /**
+     * Content of last NoteVersion. Big content is compressed in database.
+     */
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    private String recentContent;
+
+    /**
+     * Version identifier of last NoteVersion
+     */
+    private int recentVersionNumber;
+
+    /**
+     * Optimistic lock - Hibernate increments it with every update of Note and updates Note only
+     * when it has not been changed since it was read. Two concurrent modifications of the same Note
+     * cannot both succeed, the second one fails and can be retried (see NoteService).
+     */
+    @Version
+    private long lockVersion;
 
     /**
      * Collection of all versions of given note. Thanks to Hibernate CascadeOperations,
      * performing any CRUD method for Note means that the same method
      * will be applied fot NoteVersion.
      * NoteVersion is the owner of the relationship
+     * <p>
+     * Collection is loaded lazily - only when it is really needed (e.g. in Archive).
+     * For reading current state of Note use "recent" fields.
      */
-    @OneToMany(mappedBy = "note", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "note", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<NoteVersion> noteVersions = new ArrayList<>();
 
 
@@ -57,17 +122,19 @@ public class Note implements Serializable {
     }
 
     /**
-     * @return last created NoteVersion of Note
-     */
-    public NoteVersion getRecentVersion() {
-        return noteVersions.get(noteVersions.size() - 1);
-    }
-
-    /**
-     * @return first NoteVersion of Note
+     * Makes given NoteVersion the most recent version of Note - copies its data into "recent" fields.
+     * For the first version of Note it also sets creation time.
+     * <p>
+     * It does not add version to noteVersions collection.
+     *
+     * @param version newly created NoteVersion of this Note
      */
-    public NoteVersion getFirstVersion() {
-        return noteVersions.get(0);
+    public void updateRecentVersion(NoteVersion version) {
+        if (created == null)
+            created = version.getDateTime();
+        modified = version.getDateTime();
+        recentContent = version.getContent();
+        recentVersionNumber = version.getVersion();
     }
 
     public Long getId() {
@@ -94,6 +161,54 @@ public class Note implements Serializable {
         this.deleted = deleted;
     }
 
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public LocalDateTime getCreated() {
+        return created;
+    }
+
+    public void setCreated(LocalDateTime created) {
+        this.created = created;
+    }
+
+    public LocalDateTime getModified() {
+        return modified;
+    }
+
+    public void setModified(LocalDateTime modified) {
+        this.modified = modified;
+    }
+
+    public String getRecentContent() {
+        return recentContent;
+    }
+
+    public void setRecentContent(String recentContent) {
+        this.recentContent = recentContent;
+    }
+
+    public int getRecentVersionNumber() {
+        return recentVersionNumber;
+    }
+
+    public void setRecentVersionNumber(int recentVersionNumber) {
+        this.recentVersionNumber = recentVersionNumber;
+    }
+
+    public long getLockVersion() {
+        return lockVersion;
+    }
+
+    public void setLockVersion(long lockVersion) {
+        this.lockVersion = lockVersion;
+    }
+
     public List<NoteVersion> getNoteVersions() {
         return noteVersions;
     }
@@ -0,0 +1,48 @@
+package pl.adambaranowski.notesapp.model;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Model of batch request - many notes created or modified at once.
+ * <p>
+ * Batch request should have the following JSON form:
+ * <p>
+ * {
+ * "notes": [
+ * {"title": "first title", "content": "first content"},
+ * {"title": "second title", "content": "second content"}
+ * ]
+ * }
+ * <p>
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteBatchRequestModel {
+
+    /**
+     * Notes to create or modify. Cannot be empty and every note has to be valid NoteRequestModel
+     */
+    @NotEmpty
+    @Size(max = 1000)
+    @Valid
+    private List<NoteRequestModel> notes;
+
+    public NoteBatchRequestModel(List<NoteRequestModel> notes) {
+        this.notes = notes;
+    }
+
+    public NoteBatchRequestModel() {
+    }
+
+    public List<NoteRequestModel> getNotes() {
+        return notes;
+    }
+
+    public void setNotes(List<NoteRequestModel> notes) {
+        this.notes = notes;
+    }
+}
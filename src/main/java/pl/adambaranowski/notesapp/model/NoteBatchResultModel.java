@@ -0,0 +1,70 @@
+package pl.adambaranowski.notesapp.model;
+
+/**
+ * Result of processing single note of batch request, used for sending JSON responses.
+ * <p>
+ * Result has the following JSON form:
+ * {
+ * "id": 1,
+ * "title": "example title",
+ * "status": "CREATED"
+ * }
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteBatchResultModel {
+
+    /**
+     * What has been done with the note
+     */
+    public enum Status {
+        /**
+         * New note has been created (or deleted note has been created again)
+         */
+        CREATED,
+        /**
+         * New version of existing note has been created
+         */
+        MODIFIED
+    }
+
+    private Long id;
+
+    private String title;
+
+    private Status status;
+
+    public NoteBatchResultModel(Long id, String title, Status status) {
+        this.id = id;
+        this.title = title;
+        this.status = status;
+    }
+
+    public NoteBatchResultModel() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+}
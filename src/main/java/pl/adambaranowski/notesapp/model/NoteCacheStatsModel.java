@@ -0,0 +1,84 @@
+package pl.adambaranowski.notesapp.model;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Model of cache statistics used for sending JSON responses.
+ * <p>
+ * Statistics have the following JSON form:
+ * {
+ * "size": 120,
+ * "hitCount": 5400,
+ * "missCount": 130,
+ * "evictionCount": 10,
+ * "hitRate": 0.976
+ * }
+ * Contains necessary constructors and getters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteCacheStatsModel {
+
+    /**
+     * Approximate number of entries currently held in cache
+     */
+    private long size;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * Number of entries removed because cache reached its maximum size
+     */
+    private long evictionCount;
+
+    private double hitRate;
+
+    public NoteCacheStatsModel(long size, long hitCount, long missCount, long evictionCount, double hitRate) {
+        this.size = size;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.hitRate = hitRate;
+    }
+
+    public NoteCacheStatsModel() {
+    }
+
+    /**
+     * @param cache Caffeine cache with recording of statistics enabled
+     * @return current statistics of given cache
+     */
+    public static NoteCacheStatsModel of(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        return new NoteCacheStatsModel(
+                cache.estimatedSize(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.hitRate()
+        );
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+}
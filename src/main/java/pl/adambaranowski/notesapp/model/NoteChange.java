@@ -0,0 +1,145 @@
+package pl.adambaranowski.notesapp.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Java Bean model of single entry of change log for Hibernate.
+ * <p>
+ * Every change of Note (creation, new version, deletion) is stored as NoteChange in the same transaction.
+ * Id of NoteChange is a monotonic cursor of change feed - client which has read changes up to given id
+ * asks only for changes with greater id, so cost of synchronization depends on number of changes, not on size of archive.
+ * <p>
+ * Contains constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+@Entity
+public class NoteChange implements Serializable {
+
+    public enum Type {
+        /**
+         * New Note has been created or deleted Note has been created again
+         */
+        CREATED,
+        /**
+         * New version of Note has been created
+         */
+        MODIFIED,
+        /**
+         * "deleted" of Note has been set to true
+         */
+        DELETED
+    }
+
+    /**
+     * Database main key - taken from database sequence in pools of 50 ids, so it grows with every change
+     * (see NoteChangeLog for how it is used as cursor)
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "note_change_sequence")
+    @SequenceGenerator(name = "note_change_sequence", sequenceName = "note_change_sequence", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Type type;
+
+    /**
+     * Changed Note. Null only for deletion of Note purged by compaction - deletion stays in change feed,
+     * so that clients learn about it, and Note is identified by purgedNoteId and purgedTitle.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "note_id")
+    private Note note;
+
+    /**
+     * Id of purged Note, null while Note exists
+     */
+    private Long purgedNoteId;
+
+    /**
+     * Title of purged Note, null while Note exists
+     */
+    private String purgedTitle;
+
+    /**
+     * Version created by the change. Null for deletion.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "note_version_id")
+    private NoteVersion noteVersion;
+
+    /**
+     * Timestamp(date and time) of the change
+     */
+    @Column(columnDefinition = "TIMESTAMP")
+    private LocalDateTime dateTime;
+
+    public NoteChange() {
+    }
+
+    public NoteChange(Type type, Note note, NoteVersion noteVersion, LocalDateTime dateTime) {
+        this.type = type;
+        this.note = note;
+        this.noteVersion = noteVersion;
+        this.dateTime = dateTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Note getNote() {
+        return note;
+    }
+
+    public void setNote(Note note) {
+        this.note = note;
+    }
+
+    public Long getPurgedNoteId() {
+        return purgedNoteId;
+    }
+
+    public void setPurgedNoteId(Long purgedNoteId) {
+        this.purgedNoteId = purgedNoteId;
+    }
+
+    public String getPurgedTitle() {
+        return purgedTitle;
+    }
+
+    public void setPurgedTitle(String purgedTitle) {
+        this.purgedTitle = purgedTitle;
+    }
+
+    public NoteVersion getNoteVersion() {
+        return noteVersion;
+    }
+
+    public void setNoteVersion(NoteVersion noteVersion) {
+        this.noteVersion = noteVersion;
+    }
+
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+
+    public void setDateTime(LocalDateTime dateTime) {
+        this.dateTime = dateTime;
+    }
+}
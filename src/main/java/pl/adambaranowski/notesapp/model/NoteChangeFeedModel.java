@@ -0,0 +1,48 @@
+package pl.adambaranowski.notesapp.model;
+
+import java.util.List;
+
+/**
+ * Page of change feed, used for sending JSON responses.
+ * <p>
+ * Page has the following JSON form:
+ * {
+ * "changes": [ ...changes (see NoteChangeModel)... ],
+ * "cursor": 12
+ * }
+ * Cursor should be sent as "after" param of the next request. It is equal to the id of the last change,
+ * or to the sent cursor when there are no new changes.
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteChangeFeedModel {
+
+    private List<NoteChangeModel> changes;
+
+    private long cursor;
+
+    public NoteChangeFeedModel(List<NoteChangeModel> changes, long cursor) {
+        this.changes = changes;
+        this.cursor = cursor;
+    }
+
+    public NoteChangeFeedModel() {
+    }
+
+    public List<NoteChangeModel> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<NoteChangeModel> changes) {
+        this.changes = changes;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+}
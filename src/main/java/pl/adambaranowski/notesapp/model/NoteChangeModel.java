@@ -0,0 +1,135 @@
+package pl.adambaranowski.notesapp.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single change of change feed, used for sending JSON responses.
+ * <p>
+ * Change has the following JSON form:
+ * {
+ * "id": 12,
+ * "type": "MODIFIED",
+ * "noteId": 1,
+ * "title": "example title",
+ * "version": 2,
+ * "content": "example content",
+ * "dateTime": "2020-10-06T19:51:28"
+ * }
+ * For DELETED change version and content are null. Deletion of Note purged by compaction is kept,
+ * with id and title the Note had.
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteChangeModel {
+
+    /**
+     * Cursor of the change - id of NoteChange
+     */
+    private Long id;
+
+    private NoteChange.Type type;
+
+    private Long noteId;
+
+    private String title;
+
+    /**
+     * Version identifier of created version, null for deletion
+     */
+    private Integer version;
+
+    /**
+     * Full content of created version, null for deletion
+     */
+    private String content;
+
+    private LocalDateTime dateTime;
+
+    public NoteChangeModel(Long id, NoteChange.Type type, Long noteId, String title, Integer version, String content, LocalDateTime dateTime) {
+        this.id = id;
+        this.type = type;
+        this.noteId = noteId;
+        this.title = title;
+        this.version = version;
+        this.content = content;
+        this.dateTime = dateTime;
+    }
+
+    public NoteChangeModel() {
+    }
+
+    /**
+     * @param change NoteChange with fetched Note and NoteVersion
+     * @return model of the change
+     */
+    public static NoteChangeModel of(NoteChange change) {
+        NoteVersion version = change.getNoteVersion();
+        Note note = change.getNote();
+        return new NoteChangeModel(
+                change.getId(),
+                change.getType(),
+                note == null ? change.getPurgedNoteId() : note.getId(),
+                note == null ? change.getPurgedTitle() : note.getTitle(),
+                version == null ? null : version.getVersion(),
+                version == null ? null : version.getContent(),
+                change.getDateTime()
+        );
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public NoteChange.Type getType() {
+        return type;
+    }
+
+    public void setType(NoteChange.Type type) {
+        this.type = type;
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(Long noteId) {
+        this.noteId = noteId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+
+    public void setDateTime(LocalDateTime dateTime) {
+        this.dateTime = dateTime;
+    }
+}
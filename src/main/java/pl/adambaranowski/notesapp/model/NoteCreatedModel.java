@@ -0,0 +1,64 @@
+package pl.adambaranowski.notesapp.model;
+
+/**
+ * Model used for sending JSON response to creation of note - it includes id of newly created note.
+ * <p>
+ * Model has the following JSON form:
+ * {
+ * "id": 1,
+ * "title": "Note title",
+ * "content": "Note content"
+ * }
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteCreatedModel {
+
+    private Long id;
+
+    private String title;
+
+    private String content;
+
+    public NoteCreatedModel(Long id, String title, String content) {
+        this.id = id;
+        this.title = title;
+        this.content = content;
+    }
+
+    public NoteCreatedModel() {
+    }
+
+    /**
+     * @param note newly created note
+     * @return model of given note
+     */
+    public static NoteCreatedModel of(Note note) {
+        return new NoteCreatedModel(note.getId(), note.getTitle(), note.getRecentContent());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+}
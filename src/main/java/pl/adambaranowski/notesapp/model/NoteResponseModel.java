@@ -12,7 +12,8 @@ import java.time.LocalDateTime;
  * "title": "example title",
  * "content": "example content",
  * "created": "2020-10-05T19:08:39",
- * "modified": "2020-10-05T19:08:39"
+ * "modified": "2020-10-05T19:08:39",
+ * "version": 1
  * }
  * Contains necessary constructors, getters and setters.
  *
@@ -41,13 +42,18 @@ public class NoteResponseModel {
      * Should be taken from last NoteVersion
      */
     private LocalDateTime modified;
+    /**
+     * Should be taken from last NoteVersion. It is also sent as ETag of the note
+     */
+    private int version;
 
-    public NoteResponseModel(Long id, String title, String content, LocalDateTime created, LocalDateTime modified) {
+    public NoteResponseModel(Long id, String title, String content, LocalDateTime created, LocalDateTime modified, int version) {
         this.id = id;
         this.title = title;
         this.content = content;
         this.created = created;
         this.modified = modified;
+        this.version = version;
     }
 
     public NoteResponseModel() {
@@ -92,5 +98,12 @@ public class NoteResponseModel {
     public void setModified(LocalDateTime modified) {
         this.modified = modified;
     }
-}
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,44 @@
+package pl.adambaranowski.notesapp.model;
+
+/**
+ * Title of note with its id, used for sending JSON responses of title autocompletion.
+ * <p>
+ * Model has the following JSON form:
+ * {
+ * "id": 1,
+ * "title": "example title"
+ * }
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteTitleModel {
+
+    private Long id;
+
+    private String title;
+
+    public NoteTitleModel(Long id, String title) {
+        this.id = id;
+        this.title = title;
+    }
+
+    public NoteTitleModel() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+}
@@ -2,6 +2,7 @@ package pl.adambaranowski.notesapp.model;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 
 
@@ -10,32 +11,87 @@ import java.time.LocalDateTime;
  * <p>
  * Every Note has at least one NoteVersion.
  * <p>
+ * Version is stored either as snapshot (full content) or as delta - compact difference
+ * from the last snapshot of the same Note (see {@link ContentDelta}). Delta is applied to content
+ * of its base snapshot, so rebuilding content never needs more than one other version.
+ * {@link #getContent()} hides this - it always returns full content.
+ * <p>
  * Contains constructors, getters and setters.
  *
  * @author Adam Baranowski
  */
 @Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(name = NoteVersion.VERSION_CONSTRAINT, columnNames = {"note_id", "version"}),
+        indexes = @Index(name = "idx_note_version_note_id_date_time", columnList = "note_id, dateTime")
+)
 public class NoteVersion implements Serializable {
 
     /**
-     * Database main key - autogenerated by database engine
+     * Name of unique index on Note and version number
+     */
+    public static final String VERSION_CONSTRAINT = "uk_note_version_note_id_version";
+
+    /**
+     * Database main key - taken from database sequence in pools of 50 ids,
+     * which allows batch inserts of versions (the same as Note id)
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "note_version_sequence")
+    @SequenceGenerator(name = "note_version_sequence", sequenceName = "note_version_sequence", allocationSize = 50)
     private Long id;
 
     /**
-     * Version identifier
+     * Version identifier. Unique within Note - database keeps unique index on (note_id, version),
+     * which also serves finding versions of Note.
      */
     private int version;
 
     /**
-     * Content of Note
+     * Stored content - full content of Note for snapshot,
+     * only inserted text for delta (see {@link ContentDelta#getInsertion()}).
+     * Big content is compressed in database.
      */
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
     private String content;
 
     /**
-     * Timestamp(date and time) of given NoteVersion creation
+     * Snapshot which this delta has been computed from. Null for snapshot.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "base_id")
+    private NoteVersion base;
+
+    /**
+     * Number of first characters taken from base. Null for snapshot.
+     */
+    private Integer prefixLength;
+
+    /**
+     * Number of last characters taken from base. Null for snapshot.
+     */
+    private Integer suffixLength;
+
+    /**
+     * Size of full content in bytes (UTF-8)
+     */
+    private int contentBytes;
+
+    /**
+     * Size of stored content in bytes (UTF-8) - equal to contentBytes for snapshot, usually much smaller for delta
+     */
+    private int storedBytes;
+
+    /**
+     * Rebuilt full content of delta, not stored in database
+     */
+    @Transient
+    private String fullContent;
+
+    /**
+     * Timestamp(date and time) of given NoteVersion creation. Database keeps index on (note_id, dateTime)
+     * for finding version of Note current at given time.
      * <p>
      * For Note dateTime field of first NoteVersion is creation time
      * and dateTime field of last NoteVersion is modified time.
@@ -47,8 +103,10 @@ public class NoteVersion implements Serializable {
      * NoteVersion is relationship owner of relation Note-NoteVersion.
      * In DataBase there is a Table NoteVersion with foreign key "note_id", which
      * points to right Note id.
+     * <p>
+     * Note is loaded lazily, because versions are always read in context of already known Note.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "note_id")
     private Note note;
 
@@ -57,15 +115,39 @@ public class NoteVersion implements Serializable {
 
     public NoteVersion(int version, String content, LocalDateTime dateTime, Note note) {
         this.version = version;
-        this.content = content;
         this.dateTime = dateTime;
         this.note = note;
+        setContent(content);
     }
 
     public NoteVersion(int version, String content, LocalDateTime dateTime) {
         this.version = version;
-        this.content = content;
         this.dateTime = dateTime;
+        setContent(content);
+    }
+
+    /**
+     * Creates version stored as delta from given snapshot
+     *
+     * @param version  version identifier
+     * @param content  full content of new version
+     * @param dateTime creation time
+     * @param note     Note of the version
+     * @param base     snapshot of the same Note
+     * @return new NoteVersion
+     */
+    public static NoteVersion deltaOf(int version, String content, LocalDateTime dateTime, Note note, NoteVersion base) {
+        NoteVersion noteVersion = new NoteVersion(version, content, dateTime, note);
+        noteVersion.setDelta(base, ContentDelta.between(base.getContent(), content));
+        noteVersion.fullContent = content;
+        return noteVersion;
+    }
+
+    /**
+     * @return true when version keeps full content, false when it is delta
+     */
+    public boolean isSnapshot() {
+        return base == null;
     }
 
     public Long getId() {
@@ -84,12 +166,60 @@ public class NoteVersion implements Serializable {
         this.version = version;
     }
 
+    /**
+     * @return full content of version - for delta it is rebuilt from base snapshot
+     */
     public String getContent() {
-        return content;
+        if (isSnapshot())
+            return content;
+        if (fullContent == null)
+            fullContent = new ContentDelta(prefixLength, suffixLength, content).applyTo(base.getContent());
+        return fullContent;
     }
 
+    /**
+     * Sets full content - version becomes snapshot
+     *
+     * @param content full content
+     */
     public void setContent(String content) {
         this.content = content;
+        this.base = null;
+        this.prefixLength = null;
+        this.suffixLength = null;
+        this.fullContent = null;
+        this.contentBytes = utf8Length(content);
+        this.storedBytes = contentBytes;
+    }
+
+    /**
+     * Stores version as delta. Full content (contentBytes) stays the same.
+     *
+     * @param base  snapshot which delta has been computed from
+     * @param delta difference between content of base and content of this version
+     */
+    public void setDelta(NoteVersion base, ContentDelta delta) {
+        this.base = base;
+        this.content = delta.getInsertion();
+        this.prefixLength = delta.getPrefixLength();
+        this.suffixLength = delta.getSuffixLength();
+        this.storedBytes = utf8Length(content);
+    }
+
+    public NoteVersion getBase() {
+        return base;
+    }
+
+    public int getContentBytes() {
+        return contentBytes;
+    }
+
+    public int getStoredBytes() {
+        return storedBytes;
+    }
+
+    private static int utf8Length(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
     }
 
     public LocalDateTime getDateTime() {
@@ -0,0 +1,56 @@
+package pl.adambaranowski.notesapp.model;
+
+import java.util.Objects;
+
+/**
+ * Key of single version of note - id of note and version identifier. It is never reused:
+ * version identifier alone is not unique, since note created with title of purged note starts from version 1 again,
+ * but it gets new id. That is why ETags of notes are built from this key.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteVersionKey {
+
+    private final Long noteId;
+
+    private final int version;
+
+    public NoteVersionKey(Long noteId, int version) {
+        this.noteId = noteId;
+        this.version = version;
+    }
+
+    /**
+     * @param note given note
+     * @return key of the most recent version of given note
+     */
+    public static NoteVersionKey of(Note note) {
+        return new NoteVersionKey(note.getId(), note.getRecentVersionNumber());
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NoteVersionKey that = (NoteVersionKey) o;
+        return version == that.version && Objects.equals(noteId, that.noteId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(noteId, version);
+    }
+
+    @Override
+    public String toString() {
+        return noteId + "-" + version;
+    }
+}
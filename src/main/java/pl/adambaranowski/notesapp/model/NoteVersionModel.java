@@ -0,0 +1,62 @@
+package pl.adambaranowski.notesapp.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Single version in history of note, used for sending JSON responses of version listing.
+ * Content is not part of the model - it is fetched for chosen version only.
+ * <p>
+ * Model has the following JSON form:
+ * {
+ * "version": 2,
+ * "dateTime": "2020-10-06T19:51:28",
+ * "contentBytes": 15
+ * }
+ * Contains necessary constructors, getters and setters.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteVersionModel {
+
+    private int version;
+
+    private LocalDateTime dateTime;
+
+    /**
+     * Size of full content of the version in bytes (UTF-8)
+     */
+    private int contentBytes;
+
+    public NoteVersionModel(int version, LocalDateTime dateTime, int contentBytes) {
+        this.version = version;
+        this.dateTime = dateTime;
+        this.contentBytes = contentBytes;
+    }
+
+    public NoteVersionModel() {
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+
+    public void setDateTime(LocalDateTime dateTime) {
+        this.dateTime = dateTime;
+    }
+
+    public int getContentBytes() {
+        return contentBytes;
+    }
+
+    public void setContentBytes(int contentBytes) {
+        this.contentBytes = contentBytes;
+    }
+}
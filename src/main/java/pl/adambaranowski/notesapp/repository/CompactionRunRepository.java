@@ -0,0 +1,19 @@
+package pl.adambaranowski.notesapp.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import pl.adambaranowski.notesapp.model.CompactionRun;
+
+import java.util.Optional;
+
+/**
+ * Spring Data repository for reports of compaction runs.
+ */
+@Repository
+public interface CompactionRunRepository extends JpaRepository<CompactionRun, Long> {
+
+    /**
+     * @return the last run of compaction, empty when compaction has never run
+     */
+    Optional<CompactionRun> findFirstByOrderByIdDesc();
+}
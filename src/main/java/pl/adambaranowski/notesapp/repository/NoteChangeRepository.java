@@ -0,0 +1,69 @@
+package pl.adambaranowski.notesapp.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import pl.adambaranowski.notesapp.model.NoteChange;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data repository for change log (NoteChanges).
+ */
+@Repository
+public interface NoteChangeRepository extends JpaRepository<NoteChange, Long> {
+
+    /**
+     * Page of change feed - changes with id in (afterId, maxId], ordered by id.
+     * Note, created version and its base snapshot are fetched with the same query,
+     * so content of every version can be rebuilt without further queries. Lookup uses primary key index.
+     *
+     * @param afterId  cursor - id of the last change already read by client
+     * @param maxId    greatest id which can be returned
+     * @param pageable only page size is taken into account, page number should be always 0
+     * @return at most pageable.getPageSize() changes
+     */
+    @EntityGraph(attributePaths = {"note", "noteVersion", "noteVersion.base"})
+    List<NoteChange> findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(Long afterId, Long maxId, Pageable pageable);
+
+    /**
+     * @return id of the last change, 0 when there are no changes
+     */
+    @Query("select coalesce(max(c.id), 0) from NoteChange c")
+    long findMaxId();
+
+    /**
+     * Removes changes which created given versions - used before versions are removed by compaction
+     *
+     * @param versionIds ids of NoteVersions
+     * @return number of removed changes
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("delete from NoteChange c where c.noteVersion.id in :versionIds")
+    int deleteByNoteVersionIds(@Param("versionIds") Collection<Long> versionIds);
+
+    /**
+     * The last change of every given Note - for deleted Note it is its deletion
+     *
+     * @param noteIds ids of Notes
+     * @return at most one change per Note
+     */
+    @Query("select c from NoteChange c where c.id in (select max(l.id) from NoteChange l where l.note.id in :noteIds group by l.note.id)")
+    List<NoteChange> findLastChangesOfNotes(@Param("noteIds") Collection<Long> noteIds);
+
+    /**
+     * Removes all changes of given Notes - used before Notes are purged by compaction.
+     * Changes already detached from Note (deletions of purged Notes) are not removed
+     *
+     * @param noteIds ids of Notes
+     * @return number of removed changes
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("delete from NoteChange c where c.note.id in :noteIds")
+    int deleteByNoteIds(@Param("noteIds") Collection<Long> noteIds);
+}
@@ -1,9 +1,19 @@
 package pl.adambaranowski.notesapp.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteVersionKey;
 
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -24,4 +34,132 @@ public interface NoteRepository extends JpaRepository<Note, Long> {
      * @return Optional of Note model
      */
     Optional<Note> findByTitle(String title);
+
+    /**
+     * Finds many Notes by titles with one query
+     *
+     * @param titles - search parameter
+     * @return found Notes (deleted ones included), in any order
+     */
+    List<Note> findByTitleIn(Collection<String> titles);
+
+    /**
+     * Keyset (cursor) pagination over all Notes - deleted ones included.
+     * Returns next Notes with id greater than given one, ordered by id.
+     * Unlike offset pagination, the cost of fetching a page does not depend on how far the cursor is.
+     *
+     * @param id       - id of last Note of previous page (0 for the first page)
+     * @param pageable - only page size is taken into account, page number should be always 0
+     * @return at most pageable.getPageSize() Notes
+     */
+    List<Note> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * Range of ids used for fetching archive in parallel - deleted Notes included.
+     *
+     * @param fromId - the lowest id of range (inclusive)
+     * @param toId   - the highest id of range (inclusive)
+     * @return Notes of ids in given range, ordered by id
+     */
+    List<Note> findByIdBetweenOrderByIdAsc(Long fromId, Long toId);
+
+    /**
+     * Keyset (cursor) pagination over ids of all Notes - deleted ones included. Only ids are read,
+     * so boundaries of archive chunks are found without loading any Note.
+     *
+     * @param afterId  id of last Note of previous page (0 for the first page)
+     * @param pageable only page size is taken into account, page number should be always 0
+     * @return at most pageable.getPageSize() ids ordered by id
+     */
+    @Query("select n.id from Note n where n.id > :afterId order by n.id")
+    List<Long> findIdsGreaterThan(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Keyset (cursor) pagination over not-deleted Notes.
+     * "deleted" condition is checked by database, so deleted Notes are never loaded.
+     *
+     * @param id       - id of last Note of previous page (0 for the first page)
+     * @param pageable - only page size is taken into account, page number should be always 0
+     * @return at most pageable.getPageSize() not-deleted Notes ordered by id
+     */
+    List<Note> findByDeletedFalseAndIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * @return all not-deleted Notes ordered by id
+     */
+    List<Note> findByDeletedFalseOrderByIdAsc();
+
+    /**
+     * Reads only version identifier of the most recent version - content of Note is not loaded
+     *
+     * @param id - id of Note
+     * @return version identifier, empty when Note does not exist or is deleted
+     */
+    @Query("select n.recentVersionNumber from Note n where n.id = :id and n.deleted = false")
+    Optional<Integer> findRecentVersionNumberById(@Param("id") Long id);
+
+    /**
+     * Reads only id and version identifier of the most recent version - content of Note is not loaded
+     *
+     * @param title - title of Note
+     * @return key of the most recent version, empty when Note does not exist or is deleted
+     */
+    @Query("select new pl.adambaranowski.notesapp.model.NoteVersionKey(n.id, n.recentVersionNumber) " +
+            "from Note n where n.title = :title and n.deleted = false")
+    Optional<NoteVersionKey> findRecentVersionKeyByTitle(@Param("title") String title);
+
+    /**
+     * Revision of all Notes - grows with every created Note (count) and every change of any Note
+     * (lockVersion is incremented with every update of Note). Part of revision lost when deleted Notes
+     * are purged is kept in reports of compaction runs, so it never goes back.
+     *
+     * @return number which changes whenever content of archive changes
+     */
+    @Query("select count(n) + coalesce(sum(n.lockVersion), 0) + " +
+            "(select coalesce(sum(r.revisionOffset), 0) from CompactionRun r) from Note n")
+    long getRevision();
+
+    /**
+     * Locks Notes until the end of transaction - concurrent modifications of them wait for it
+     *
+     * @param ids ids of Notes
+     * @return found Notes ordered by id
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Note> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    /**
+     * Keyset pagination over Notes deleted before given time (Notes deleted before deletion time
+     * has been recorded are aged by their last modification)
+     *
+     * @param deletedBefore time of deletion
+     * @param afterId       id of last Note of previous page (0 for the first page)
+     * @param pageable      only page size is taken into account, page number should be always 0
+     * @return ids of deleted Notes ordered by id
+     */
+    @Query("select n.id from Note n where n.deleted = true and coalesce(n.deletedAt, n.modified) < :deletedBefore " +
+            "and n.id > :afterId order by n.id")
+    List<Long> findIdsOfDeletedBefore(@Param("deletedBefore") LocalDateTime deletedBefore, @Param("afterId") Long afterId,
+                                      Pageable pageable);
+
+    /**
+     * Marks Notes as changed without loading them - their versions have been compacted, so archive
+     * revision has to change and concurrent modifications started before have to be retried
+     *
+     * @param ids ids of Notes
+     * @return number of updated Notes
+     */
+    @Modifying
+    @Query("update Note n set n.lockVersion = n.lockVersion + 1 where n.id in :ids")
+    int incrementLockVersion(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Removes Notes without cascading to their versions - versions have to be removed before
+     *
+     * @param ids ids of Notes
+     * @return number of removed Notes
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Note n where n.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
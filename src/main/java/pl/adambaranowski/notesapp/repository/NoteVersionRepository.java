@@ -0,0 +1,152 @@
+package pl.adambaranowski.notesapp.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import pl.adambaranowski.notesapp.model.ArchiveStatsModel;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.model.NoteVersionModel;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Spring Data repository for NoteVersions.
+ * <p>
+ * Note.noteVersions collection is loaded lazily, so this repository is used whenever versions
+ * are needed for many Notes at once or when single version is appended to Note
+ * (without loading all previous versions).
+ */
+@Repository
+public interface NoteVersionRepository extends JpaRepository<NoteVersion, Long> {
+
+    /**
+     * Loads versions of many Notes in one query. Base snapshots of delta versions are fetched with the same query,
+     * so content of every version can be rebuilt without further queries.
+     *
+     * @param noteIds ids of Notes
+     * @return all versions of given Notes, ordered by Note id and version identifier
+     */
+    @EntityGraph(attributePaths = "base")
+    List<NoteVersion> findByNoteIdInOrderByNoteIdAscVersionAsc(Collection<Long> noteIds);
+
+    /**
+     * Page of history of Note, newest versions first. Only version identifier, time and size are read - contents
+     * are not loaded. Served by unique index on (note_id, version).
+     *
+     * @param noteId        id of Note
+     * @param beforeVersion only versions older than this one are returned
+     * @param pageable      page size
+     * @return versions of Note ordered by version identifier descending
+     */
+    @Query("select new pl.adambaranowski.notesapp.model.NoteVersionModel(v.version, v.dateTime, v.contentBytes) " +
+            "from NoteVersion v where v.note.id = :noteId and v.version < :beforeVersion order by v.version desc")
+    List<NoteVersionModel> findHistory(@Param("noteId") Long noteId, @Param("beforeVersion") int beforeVersion, Pageable pageable);
+
+    /**
+     * Finds single version of Note. Note and base snapshot of delta are fetched with the same query.
+     *
+     * @param noteId  id of Note
+     * @param version version identifier
+     * @return version, empty when Note has no such version
+     */
+    @EntityGraph(attributePaths = {"note", "base"})
+    Optional<NoteVersion> findByNoteIdAndVersion(Long noteId, int version);
+
+    /**
+     * Finds version of Note which was current at given time - the newest one created not later than that.
+     * Served by index on (note_id, dateTime). Note and base snapshot of delta are fetched with the same query.
+     *
+     * @param noteId   id of Note
+     * @param dateTime point in time
+     * @return version, empty when Note did not exist at given time
+     */
+    @EntityGraph(attributePaths = {"note", "base"})
+    Optional<NoteVersion> findFirstByNoteIdAndDateTimeLessThanEqualOrderByDateTimeDescVersionDesc(Long noteId, LocalDateTime dateTime);
+
+    /**
+     * Finds the last snapshot (version with full content) of Note
+     *
+     * @param noteId id of Note
+     * @return last snapshot, empty when Note has no versions
+     */
+    Optional<NoteVersion> findFirstByNoteIdAndBaseIsNullOrderByVersionDesc(Long noteId);
+
+    /**
+     * Finds the last snapshot of every given Note with one query - batch modifications use it,
+     * so that no query is sent (and no pending insert is flushed) for every modified Note.
+     *
+     * @param noteIds ids of Notes
+     * @return the last snapshot of every given Note which has any version, in any order
+     */
+    @Query("select v from NoteVersion v where v.note.id in :noteIds and v.base is null and v.version = " +
+            "(select max(s.version) from NoteVersion s where s.note = v.note and s.base is null)")
+    List<NoteVersion> findLastSnapshotsOfNotes(@Param("noteIds") Collection<Long> noteIds);
+
+    /**
+     * Keyset pagination over Notes which have more versions than given number - candidates for compaction.
+     * Served by unique index on (note_id, version).
+     *
+     * @param keep     number of versions
+     * @param afterId  id of last Note of previous page (0 for the first page)
+     * @param pageable only page size is taken into account, page number should be always 0
+     * @return ids of Notes ordered by id
+     */
+    @Query("select v.note.id from NoteVersion v where v.note.id > :afterId " +
+            "group by v.note.id having count(v) > :keep order by v.note.id")
+    List<Long> findIdsOfNotesWithMoreVersionsThan(@Param("keep") long keep, @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Removes versions. Deltas are removed first, so no version is removed before deltas based on it.
+     * Removed snapshots cannot be base of any kept version.
+     *
+     * @param ids ids of versions
+     * @return number of removed versions
+     */
+    default int deleteByIds(Collection<Long> ids) {
+        return deleteDeltasByIds(ids) + deleteSnapshotsByIds(ids);
+    }
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from NoteVersion v where v.id in :ids and v.base is not null")
+    int deleteDeltasByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from NoteVersion v where v.id in :ids")
+    int deleteSnapshotsByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Removes all versions of Notes - deltas first, then snapshots
+     *
+     * @param noteIds ids of Notes
+     * @return number of removed versions
+     */
+    default int deleteByNoteIds(Collection<Long> noteIds) {
+        return deleteDeltasByNoteIds(noteIds) + deleteSnapshotsByNoteIds(noteIds);
+    }
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from NoteVersion v where v.note.id in :noteIds and v.base is not null")
+    int deleteDeltasByNoteIds(@Param("noteIds") Collection<Long> noteIds);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from NoteVersion v where v.note.id in :noteIds")
+    int deleteSnapshotsByNoteIds(@Param("noteIds") Collection<Long> noteIds);
+
+    /**
+     * @return numbers of versions and snapshots, and sizes of full and stored content of all versions
+     */
+    @Query("select new pl.adambaranowski.notesapp.model.ArchiveStatsModel(" +
+            "count(v), " +
+            "coalesce(sum(case when v.base is null then 1 else 0 end), 0), " +
+            "coalesce(sum(v.contentBytes), 0), " +
+            "coalesce(sum(v.storedBytes), 0)) " +
+            "from NoteVersion v")
+    ArchiveStatsModel getStats();
+}
@@ -0,0 +1,165 @@
+package pl.adambaranowski.notesapp.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Writer of archive JSON used by ArchiveService.
+ * It writes into any JsonGenerator, so the same archive is produced in binary formats with JSON data model (CBOR).
+ * <p>
+ * New instance has to be created for every request - it wraps JsonGenerator of single archive,
+ * so it is never shared between threads.
+ * Thanks to this ArchiveService itself is stateless and can serve many archive requests at the same time.
+ * <p>
+ * Every field is written straight into the generator, which escapes titles and contents (quotes, backslashes,
+ * control characters) and encodes them into its own buffer - no String is built for a note or a version.
+ * Field names are encoded once and dates are formatted into reused buffer, so the only allocation per version
+ * is content rebuilt from delta. Buffers of the generator are recycled by Jackson between requests served by the same thread.
+ *
+ * @author Adam Baranowski
+ */
+public class ArchiveJsonWriter implements Flushable, Closeable {
+
+    private static final SerializableString ID = new SerializedString("id");
+
+    private static final SerializableString TITLE = new SerializedString("title");
+
+    private static final SerializableString VERSIONS = new SerializedString("versions");
+
+    private static final SerializableString CONTENT = new SerializedString("content");
+
+    private static final SerializableString DATE = new SerializedString("date");
+
+    private final JsonGenerator generator;
+
+    /**
+     * Buffer for formatting dates, long enough for yyyy-MM-ddTHH:mm:ss.nnnnnnnnn
+     */
+    private final char[] dateBuffer = new char[29];
+
+    /**
+     * @param generator generator of single archive. Its target is not closed by this writer - it belongs to the caller
+     */
+    public ArchiveJsonWriter(JsonGenerator generator) {
+        this.generator = generator;
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Opens JSON array of notes
+     */
+    public void writeStartArchive() throws IOException {
+        generator.writeStartArray();
+    }
+
+    /**
+     * Writes JSON of all versions of given note
+     *
+     * @param note     given note
+     * @param versions all versions of given note, ordered by version identifier. May be empty
+     */
+    public void writeNote(Note note, List<NoteVersion> versions) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ID);
+        generator.writeNumber(note.getId());
+        generator.writeFieldName(TITLE);
+        generator.writeString(note.getTitle());
+        generator.writeFieldName(VERSIONS);
+        generator.writeStartArray();
+        for (NoteVersion version : versions) {
+            generator.writeStartObject();
+            generator.writeFieldName(CONTENT);
+            generator.writeString(version.getContent());
+            generator.writeFieldName(DATE);
+            writeDate(version.getDateTime());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Closes JSON array of notes and flushes everything into underlying stream
+     */
+    public void writeEndArchive() throws IOException {
+        generator.writeEndArray();
+        flush();
+    }
+
+    /**
+     * Writes date in the same form as {@link LocalDateTime#toString()}, without creating String
+     */
+    private void writeDate(LocalDateTime dateTime) throws IOException {
+        if (dateTime == null || dateTime.getYear() < 1000 || dateTime.getYear() > 9999) {
+            //rare - not worth of own formatting
+            generator.writeString(String.valueOf(dateTime));
+            return;
+        }
+        int length = 0;
+        length = appendDigits(dateTime.getYear(), 4, length);
+        dateBuffer[length++] = '-';
+        length = appendDigits(dateTime.getMonthValue(), 2, length);
+        dateBuffer[length++] = '-';
+        length = appendDigits(dateTime.getDayOfMonth(), 2, length);
+        dateBuffer[length++] = 'T';
+        length = appendDigits(dateTime.getHour(), 2, length);
+        dateBuffer[length++] = ':';
+        length = appendDigits(dateTime.getMinute(), 2, length);
+        int second = dateTime.getSecond();
+        int nano = dateTime.getNano();
+        if (second > 0 || nano > 0) {
+            dateBuffer[length++] = ':';
+            length = appendDigits(second, 2, length);
+            if (nano > 0) {
+                dateBuffer[length++] = '.';
+                if (nano % 1_000_000 == 0)
+                    length = appendDigits(nano / 1_000_000, 3, length);
+                else if (nano % 1_000 == 0)
+                    length = appendDigits(nano / 1_000, 6, length);
+                else
+                    length = appendDigits(nano, 9, length);
+            }
+        }
+        generator.writeString(dateBuffer, 0, length);
+    }
+
+    /**
+     * Appends value padded with leading zeros to given number of digits
+     *
+     * @return position after appended digits
+     */
+    private int appendDigits(int value, int digits, int position) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            dateBuffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    /**
+     * Passes buffered bytes to the underlying stream and flushes it
+     */
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    /**
+     * Releases buffers of the generator. Does not close the underlying stream.
+     * Archive which has not been ended is left incomplete, so client can see that it has been interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        generator.close();
+    }
+}
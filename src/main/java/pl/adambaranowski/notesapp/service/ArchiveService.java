@@ -1,19 +1,57 @@
 package pl.adambaranowski.notesapp.service;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pl.adambaranowski.notesapp.metrics.StatementCounter;
+import pl.adambaranowski.notesapp.model.ArchiveStatsModel;
 import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteChange;
+import pl.adambaranowski.notesapp.model.NoteChangeFeedModel;
+import pl.adambaranowski.notesapp.model.NoteChangeModel;
 import pl.adambaranowski.notesapp.model.NoteVersion;
 import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.repository.NoteVersionRepository;
 
-import java.util.ArrayList;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
  * Intermediary between note repository and note archive controller.
  * <p>
  * It is responsible for returning all data from database
+ * <p>
+ * Service is stateless - all state of single archive lives in {@link ArchiveJsonWriter} created per call,
+ * so it is safe to serve many archive requests concurrently.
+ * <p>
+ * With parallelism greater than 1 ("archive.export.parallelism") streamed archive is assembled by pool of export threads
+ * shared by all archive requests - see {@link #writeAllVersionsOfAllNotes(OutputStream)}.
  *
  * @author Adam Baranowski
  */
@@ -22,53 +60,335 @@ public class ArchiveService {
 
     private NoteRepository noteRepository;
 
-    private StringBuilder sb = new StringBuilder();
+    private NoteVersionRepository noteVersionRepository;
+
+    private NoteChangeLog noteChangeLog;
+
+    /**
+     * Factory of generators of archive JSON, shared with ObjectMapper of the application
+     */
+    private JsonFactory jsonFactory;
+
+    /**
+     * Factory of generators of archive CBOR - binary format with the same data model as JSON
+     */
+    private JsonFactory cborFactory = new CBORFactory();
+
+    /**
+     * Separator of notes in JSON array. CBOR array does not need any separator
+     */
+    private static final SerializableString JSON_NOTE_SEPARATOR = new SerializedString(",");
+
+    /**
+     * Number of Notes fetched from database at once during streaming export.
+     * Memory used by export is bounded by this value, not by the size of archive.
+     */
+    private int pageSize;
+
+    /**
+     * Sizes of streamed JSON archives in bytes (before HTTP compression)
+     */
+    private DistributionSummary jsonArchiveSizes;
+
+    /**
+     * Sizes of streamed CBOR archives in bytes (before HTTP compression)
+     */
+    private DistributionSummary cborArchiveSizes;
+
+    /**
+     * Number of threads fetching and serializing chunks of archive
+     */
+    private int parallelism;
+
+    /**
+     * Pool of export threads, null when archive is assembled by the requesting thread (parallelism 1)
+     */
+    private ThreadPoolTaskExecutor executor;
 
     @Autowired
-    public ArchiveService(NoteRepository noteRepository) {
+    public ArchiveService(NoteRepository noteRepository,
+                          NoteVersionRepository noteVersionRepository,
+                          NoteChangeLog noteChangeLog,
+                          ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          StatementCounter statementCounter,
+                          @Value("${archive.export.page-size:100}") int pageSize,
+                          @Value("${archive.export.parallelism:1}") int parallelism) {
         this.noteRepository = noteRepository;
+        this.noteVersionRepository = noteVersionRepository;
+        this.noteChangeLog = noteChangeLog;
+        this.jsonFactory = objectMapper.getFactory();
+        this.pageSize = pageSize;
+        this.jsonArchiveSizes = archiveSizes("json", meterRegistry);
+        this.cborArchiveSizes = archiveSizes("cbor", meterRegistry);
+        this.parallelism = parallelism;
+        if (parallelism > 1)
+            this.executor = createExecutor(parallelism, statementCounter);
     }
 
-    // YES, I KNOW THAT IT WOULD BE BETTER TO USE ANY JSON LIBRARY INSTEAD OF HARDCODING THIS JSONS MANUALLY
-    // I WAS JUST BORED
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null)
+            executor.shutdown();
+    }
 
     /**
-     * Manually created JSON contains all versions of all notes
+     * JSON contains all versions of all notes
      *
      * @return JSON String contains all versions of all notes
      */
     public String getAllVersionsOfAllNotes() {
-        List<Note> all = noteRepository.findAll();
-        ArrayList<String> collect = all.stream()
-                .map(this::parseNoteIntoJSON).collect(Collectors.toCollection(ArrayList::new));
-        //clearing sb
-        sb.setLength(0);
-        sb.append("[");
-        for (String note : collect
-        ) {
-            sb.append(note);
-            sb.append(",");
+        StringWriter stringWriter = new StringWriter();
+        try {
+            writeAllVersionsOfAllNotes(new ArchiveJsonWriter(jsonFactory.createGenerator(stringWriter)));
+        } catch (IOException e) {
+            //StringWriter never throws IOException
+            throw new UncheckedIOException(e);
         }
-        sb.delete(sb.lastIndexOf(","), sb.lastIndexOf(",") + 1);
-        sb.append("]");
-        return sb.toString();
+        return stringWriter.toString();
+    }
+
+    /**
+     * Streams JSON contains all versions of all notes straight into given output stream.
+     * <p>
+     * Notes are fetched page by page (keyset pagination on id), so only one page of Notes
+     * is kept in memory at any time. Versions of all Notes of the page are loaded with one query. Every page is flushed to the client before fetching next one.
+     * JSON is generated as UTF-8 bytes straight into the stream, without intermediate Writer.
+     * Produced JSON has the same form as {@link #getAllVersionsOfAllNotes()}.
+     * <p>
+     * With parallelism greater than 1 archive is split into chunks of page size Notes. The requesting thread finds
+     * boundaries of chunks by keyset pagination over ids only (gaps in ids left by purged Notes never give empty chunks),
+     * chunks are fetched and serialized concurrently by export threads, and the requesting thread writes finished chunks
+     * to the stream in order of ids. At most twice as many chunks as export threads are in progress or waiting
+     * for one request, so memory used by export is still bounded by page size, not by the size of archive.
+     * <p>
+     * Size of every completely streamed archive is recorded ("notes.archive.bytes" summary).
+     *
+     * @param outputStream stream to write JSON into, e.g. HTTP response body. It is not closed by this method
+     * @throws IOException when writing to the stream fails (e.g. client disconnected)
+     */
+    public void writeAllVersionsOfAllNotes(OutputStream outputStream) throws IOException {
+        writeAllVersionsOfAllNotes(outputStream, jsonFactory, JSON_NOTE_SEPARATOR, jsonArchiveSizes);
     }
 
     /**
-     * @param note given note
-     * @return JSON String of all versions of given note
+     * Streams all versions of all notes in CBOR into given output stream.
+     * Archive has the same structure as JSON one (see {@link #writeAllVersionsOfAllNotes(OutputStream)}),
+     * but it is smaller and cheaper to encode and decode.
+     *
+     * @param outputStream stream to write CBOR into, e.g. HTTP response body. It is not closed by this method
+     * @throws IOException when writing to the stream fails (e.g. client disconnected)
      */
-    private String parseNoteIntoJSON(Note note) {
-        sb.setLength(0);
-        sb.append("{\"id\":" + note.getId() + ",\"title\":\"" + note.getTitle() + "\", \"versions\": [");
-        List<NoteVersion> noteVersions = note.getNoteVersions();
-        for (NoteVersion version : noteVersions
-        ) {
-            sb.append("{\"content\":\"" + version.getContent() + "\", \"date\":\"" + version.getDateTime() + "\"},");
+    public void writeAllVersionsOfAllNotesAsCbor(OutputStream outputStream) throws IOException {
+        writeAllVersionsOfAllNotes(outputStream, cborFactory, null, cborArchiveSizes);
+    }
+
+    private void writeAllVersionsOfAllNotes(OutputStream outputStream, JsonFactory factory, SerializableString noteSeparator,
+                                            DistributionSummary archiveSizes) throws IOException {
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        ArchiveJsonWriter writer = new ArchiveJsonWriter(factory.createGenerator(countingStream, JsonEncoding.UTF8));
+        if (executor == null)
+            writeAllVersionsOfAllNotes(writer);
+        else
+            writeAllVersionsOfAllNotesInParallel(writer, countingStream, factory, noteSeparator);
+        archiveSizes.record(countingStream.count);
+    }
+
+    private void writeAllVersionsOfAllNotes(ArchiveJsonWriter writer) throws IOException {
+        try (writer) {
+            writer.writeStartArchive();
+
+            long lastId = 0;
+            List<Note> page;
+            do {
+                page = noteRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, pageSize));
+                Map<Long, List<NoteVersion>> versions = findVersionsOf(page);
+                for (Note note : page) {
+                    writer.writeNote(note, versions.getOrDefault(note.getId(), Collections.emptyList()));
+                    lastId = note.getId();
+                }
+                writer.flush();
+            } while (page.size() == pageSize);
+
+            writer.writeEndArchive();
         }
-        sb.delete(sb.lastIndexOf(","), sb.lastIndexOf(",") + 1);
-        sb.append("]}");
+    }
 
-        return sb.toString();
+    /**
+     * Opening and closing of archive are written by the writer, chunks between them are written
+     * straight into the stream, preceded by note separator (JSON only).
+     */
+    private void writeAllVersionsOfAllNotesInParallel(ArchiveJsonWriter writer, OutputStream outputStream,
+                                                      JsonFactory factory, SerializableString noteSeparator) throws IOException {
+        Deque<Future<byte[]>> chunks = new ArrayDeque<>();
+        try (writer) {
+            writer.writeStartArchive();
+            writer.flush();
+
+            long lastId = 0;
+            boolean lastChunk = false;
+            boolean firstChunk = true;
+            while (!lastChunk || !chunks.isEmpty()) {
+                while (!lastChunk && chunks.size() < 2 * parallelism) {
+                    List<Long> ids = noteRepository.findIdsGreaterThan(lastId, PageRequest.of(0, pageSize));
+                    lastChunk = ids.size() < pageSize;
+                    if (ids.isEmpty())
+                        break;
+                    long fromId = ids.get(0);
+                    long toId = ids.get(ids.size() - 1);
+                    chunks.add(executor.submit(() -> serializeChunk(fromId, toId, factory, noteSeparator)));
+                    lastId = toId;
+                }
+                if (chunks.isEmpty())
+                    break;
+                byte[] chunk = await(chunks.poll());
+                if (chunk.length == 0)
+                    continue;
+                if (!firstChunk && noteSeparator != null)
+                    noteSeparator.writeUnquotedUTF8(outputStream);
+                outputStream.write(chunk);
+                outputStream.flush();
+                firstChunk = false;
+            }
+
+            writer.writeEndArchive();
+        } finally {
+            //e.g. client disconnected - chunks which are not needed any more are not fetched
+            for (Future<byte[]> chunk : chunks) {
+                chunk.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Fetches Notes of given id range with all their versions and serializes them into separate buffer
+     *
+     * @return serialized Notes separated by note separator, empty when all Notes of given range have been purged meanwhile
+     */
+    private byte[] serializeChunk(long fromId, long toId, JsonFactory factory, SerializableString noteSeparator) throws IOException {
+        List<Note> notes = noteRepository.findByIdBetweenOrderByIdAsc(fromId, toId);
+        if (notes.isEmpty())
+            return new byte[0];
+        Map<Long, List<NoteVersion>> versions = findVersionsOf(notes);
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createGenerator(chunk, JsonEncoding.UTF8);
+        //notes are written as sequence of root values, separated the same way as in array
+        if (noteSeparator != null)
+            generator.setRootValueSeparator(noteSeparator);
+        try (ArchiveJsonWriter writer = new ArchiveJsonWriter(generator)) {
+            for (Note note : notes) {
+                writer.writeNote(note, versions.getOrDefault(note.getId(), Collections.emptyList()));
+            }
+        }
+        return chunk.toByteArray();
+    }
+
+    private static byte[] await(Future<byte[]> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Archive export has been interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Change feed - every version created and every deletion of Note after given cursor.
+     * <p>
+     * Consumer which keeps its copy of archive up to date applies returned changes and asks again with returned cursor,
+     * so it reads only what has changed instead of the whole archive.
+     *
+     * @param afterId cursor returned by previous call, 0 to read from the beginning
+     * @param limit   maximal number of changes
+     * @return changes ordered by id and cursor for the next call
+     */
+    @Transactional(readOnly = true)
+    public NoteChangeFeedModel getChanges(long afterId, int limit) {
+        List<NoteChange> changes = noteChangeLog.read(afterId, limit);
+        long cursor = changes.isEmpty() ? afterId : changes.get(changes.size() - 1).getId();
+        return new NoteChangeFeedModel(
+                changes.stream().map(NoteChangeModel::of).collect(Collectors.toList()),
+                cursor);
+    }
+
+    /**
+     * Revision of archive - it changes whenever any Note or NoteVersion is created or changed.
+     * It is computed without reading any NoteVersion, so it is cheap to check whether archive has changed.
+     *
+     * @return current revision of archive
+     */
+    public long getRevision() {
+        return noteRepository.getRevision();
+    }
+
+    /**
+     * @return storage statistics of all versions - how many bytes are really stored thanks to deltas
+     */
+    public ArchiveStatsModel getStats() {
+        return noteVersionRepository.getStats();
+    }
+
+    /**
+     * @param notes page of Notes
+     * @return versions of given Notes grouped by Note id, ordered by version identifier
+     */
+    private Map<Long, List<NoteVersion>> findVersionsOf(List<Note> notes) {
+        if (notes.isEmpty())
+            return Collections.emptyMap();
+        List<Long> ids = notes.stream().map(Note::getId).collect(Collectors.toList());
+        return noteVersionRepository.findByNoteIdInOrderByNoteIdAscVersionAsc(ids).stream()
+                .collect(Collectors.groupingBy(version -> version.getNote().getId()));
+    }
+
+    /**
+     * Statements of export threads are counted in the request which streams the archive
+     */
+    private static ThreadPoolTaskExecutor createExecutor(int parallelism, StatementCounter statementCounter) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("archive-export-");
+        executor.setTaskDecorator(statementCounter);
+        executor.initialize();
+        return executor;
+    }
+
+    private static DistributionSummary archiveSizes(String format, MeterRegistry meterRegistry) {
+        return DistributionSummary.builder("notes.archive.bytes")
+                .description("Size of streamed archive")
+                .baseUnit("bytes")
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts bytes written to the stream
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
     }
 }
@@ -0,0 +1,134 @@
+package pl.adambaranowski.notesapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pl.adambaranowski.notesapp.model.NoteCacheStatsModel;
+import pl.adambaranowski.notesapp.model.NoteResponseModel;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-process cache of NoteResponseModels used by NoteService for reading notes by id and by title.
+ * <p>
+ * Both caches are bounded by size and use Caffeine's W-TinyLFU eviction, so the hot notes stay in memory.
+ * Only existing, not-deleted notes are cached.
+ * <p>
+ * NoteService has to call {@link #evict(Long, String)} whenever Note is modified or deleted.
+ *
+ * @author Adam Baranowski
+ */
+@Component
+public class NoteCache {
+
+    private final Cache<Long, NoteResponseModel> byId;
+
+    private final Cache<String, NoteResponseModel> byTitle;
+
+    public NoteCache(@Value("${notes.cache.maximum-size:10000}") long maximumSize) {
+        this.byId = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.byTitle = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @param id     id of wanted Note
+     * @param loader loads Note from database when it is not cached. Exception thrown by loader is passed to the caller
+     *               and nothing is cached
+     * @return cached or loaded NoteResponseModel
+     */
+    public NoteResponseModel getById(Long id, Function<Long, NoteResponseModel> loader) {
+        return byId.get(id, loader);
+    }
+
+    /**
+     * @param ids    ids of wanted Notes
+     * @param loader loads all not cached Notes from database at once. Notes which it does not return
+     *               (do not exist or are deleted) are not cached
+     * @return cached or loaded NoteResponseModels by id, without Notes which do not exist
+     */
+    public Map<Long, NoteResponseModel> getAllById(Collection<Long> ids,
+                                                   Function<Iterable<? extends Long>, Map<Long, NoteResponseModel>> loader) {
+        return byId.getAll(ids, loader);
+    }
+
+    /**
+     * @param title  title of wanted Note
+     * @param loader loads Note from database when it is not cached. Exception thrown by loader is passed to the caller
+     *               and nothing is cached
+     * @return cached or loaded NoteResponseModel
+     */
+    public NoteResponseModel getByTitle(String title, Function<String, NoteResponseModel> loader) {
+        return byTitle.get(title, loader);
+    }
+
+    /**
+     * @param id id of wanted Note
+     * @return cached NoteResponseModel, null when it is not cached. Nothing is loaded
+     */
+    public NoteResponseModel peekById(Long id) {
+        return byId.getIfPresent(id);
+    }
+
+    /**
+     * @param title title of wanted Note
+     * @return cached NoteResponseModel, null when it is not cached. Nothing is loaded
+     */
+    public NoteResponseModel peekByTitle(String title) {
+        return byTitle.getIfPresent(title);
+    }
+
+    /**
+     * Removes Note from both caches.
+     * <p>
+     * Note is removed immediately and once again after commit of current transaction (if there is one).
+     * Second eviction drops entry loaded by concurrent request which has read not yet committed (old) state.
+     *
+     * @param id    id of changed Note
+     * @param title title of changed Note
+     */
+    public void evict(Long id, String title) {
+        invalidate(id, title);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(id, title);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes all Notes from both caches
+     */
+    public void invalidateAll() {
+        byId.invalidateAll();
+        byTitle.invalidateAll();
+    }
+
+    /**
+     * @return statistics of cache of Notes by id
+     */
+    public NoteCacheStatsModel getByIdStats() {
+        return NoteCacheStatsModel.of(byId);
+    }
+
+    /**
+     * @return statistics of cache of Notes by title
+     */
+    public NoteCacheStatsModel getByTitleStats() {
+        return NoteCacheStatsModel.of(byTitle);
+    }
+
+    private void invalidate(Long id, String title) {
+        if (id != null)
+            byId.invalidate(id);
+        if (title != null)
+            byTitle.invalidate(title);
+    }
+}
@@ -0,0 +1,100 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pl.adambaranowski.notesapp.model.NoteChange;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Change log of Notes - appends NoteChanges and reads them as change feed.
+ * <p>
+ * Ids of NoteChanges are taken from sequence when change is appended, but transactions commit in any order,
+ * so change of greater id can be visible before change of smaller id. Client which has read the greater one
+ * would never see the smaller one. That is why feed returns only changes below the smallest id
+ * of not yet finished transaction - every change with smaller id is already committed (or rolled back),
+ * so client's cursor never skips a change.
+ * <p>
+ * Ids of not finished changes are tracked in memory, so the log assumes that Notes are changed
+ * by single application instance.
+ *
+ * @author Adam Baranowski
+ */
+@Component
+public class NoteChangeLog {
+
+    private NoteChangeRepository noteChangeRepository;
+
+    /**
+     * Ids of appended changes whose transactions have not finished yet. Guarded by this
+     */
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+
+    /**
+     * The greatest id of appended change, -1 until it is read from database. Guarded by this
+     */
+    private long highestId = -1;
+
+    @Autowired
+    public NoteChangeLog(NoteChangeRepository noteChangeRepository) {
+        this.noteChangeRepository = noteChangeRepository;
+    }
+
+    /**
+     * Saves change in current transaction. Change is visible in feed after the transaction finishes.
+     *
+     * @param change new change
+     * @return saved change
+     */
+    public NoteChange append(NoteChange change) {
+        Long id;
+        synchronized (this) {
+            noteChangeRepository.save(change);
+            id = change.getId();
+            inFlight.add(id);
+            highestId = Math.max(highestId, id);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    finished(id);
+                }
+            });
+        } else {
+            finished(id);
+        }
+        return change;
+    }
+
+    /**
+     * Reads changes after given cursor. Should be called in (read-only) transaction, when returned changes
+     * are going to be used beyond fetched Note and NoteVersion.
+     *
+     * @param afterId cursor - id of the last change already read, 0 to read from the beginning
+     * @param limit   maximal number of changes
+     * @return committed changes with id greater than afterId, ordered by id
+     */
+    public List<NoteChange> read(long afterId, int limit) {
+        return noteChangeRepository.findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(
+                afterId, getCommittedBound(), PageRequest.of(0, limit));
+    }
+
+    /**
+     * @return the greatest id such that all changes with id up to it are finished
+     */
+    private synchronized long getCommittedBound() {
+        if (highestId < 0)
+            highestId = noteChangeRepository.findMaxId();
+        return inFlight.isEmpty() ? highestId : inFlight.first() - 1;
+    }
+
+    private synchronized void finished(Long id) {
+        inFlight.remove(id);
+    }
+}
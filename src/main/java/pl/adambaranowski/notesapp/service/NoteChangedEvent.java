@@ -0,0 +1,99 @@
+package pl.adambaranowski.notesapp.service;
+
+/**
+ * Spring application event published by NoteService whenever Note is created, modified or deleted.
+ * <p>
+ * Listeners (e.g. search index) should use @TransactionalEventListener, so that they see only committed changes.
+ * Events of the same Note may reach listeners in different order than they were committed,
+ * so listeners should compare versionNumber.
+ *
+ * @author Adam Baranowski
+ */
+public class NoteChangedEvent {
+
+    public enum Type {
+        /**
+         * New Note has been created or deleted Note has been created again
+         */
+        CREATED,
+        /**
+         * New version of Note has been created
+         */
+        MODIFIED,
+        /**
+         * "deleted" of Note has been set to true
+         */
+        DELETED
+    }
+
+    private final Type type;
+
+    private final Long noteId;
+
+    private final String title;
+
+    /**
+     * Content of the most recent version of Note
+     */
+    private final String content;
+
+    /**
+     * Version identifier of the most recent version of Note
+     */
+    private final int versionNumber;
+
+    /**
+     * Id of NoteChange in change log, null when unknown. Events are not ordered by it, so it is not a feed cursor
+     */
+    private final Long changeId;
+
+    public NoteChangedEvent(Type type, Long noteId, String title, String content, int versionNumber) {
+        this(type, noteId, title, content, versionNumber, null);
+    }
+
+    public NoteChangedEvent(Type type, Long noteId, String title, String content, int versionNumber, Long changeId) {
+        this.type = type;
+        this.noteId = noteId;
+        this.title = title;
+        this.content = content;
+        this.versionNumber = versionNumber;
+        this.changeId = changeId;
+    }
+
+    /**
+     * Compares two events of the same Note
+     *
+     * @param other event of the same Note
+     * @return true when this event describes later state of Note than other one
+     * (greater version, or deletion of the same version)
+     */
+    public boolean isNewerThan(NoteChangedEvent other) {
+        if (versionNumber != other.versionNumber)
+            return versionNumber > other.versionNumber;
+        return type == Type.DELETED && other.type != Type.DELETED;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public int getVersionNumber() {
+        return versionNumber;
+    }
+
+    public Long getChangeId() {
+        return changeId;
+    }
+}
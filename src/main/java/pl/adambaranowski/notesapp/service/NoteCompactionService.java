@@ -0,0 +1,341 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.adambaranowski.notesapp.model.CompactionReportModel;
+import pl.adambaranowski.notesapp.model.CompactionRun;
+import pl.adambaranowski.notesapp.model.ContentDelta;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteChange;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.repository.CompactionRunRepository;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.repository.NoteVersionRepository;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Removes old NoteVersions and deleted Notes according to retention policy, so that archive does not grow forever.
+ * <p>
+ * Retention policy:
+ * <ul>
+ * <li>the last "notes.compaction.keep-last-versions" versions of every Note are kept,</li>
+ * <li>older versions are kept for "notes.compaction.daily-after-days" days, after that only the last version
+ * of every day is kept,</li>
+ * <li>deleted Notes are removed with all their versions "notes.compaction.tombstone-days" days after deletion.</li>
+ * </ul>
+ * Changes of removed versions and Notes are removed from change log as well, except of deletion of purged Note -
+ * it is detached from the Note and kept, so that client reading change feed after the purge learns about the deletion.
+ * <p>
+ * Delta version is rebuilt from its base snapshot, so when snapshot is removed, the first kept delta based on it
+ * becomes snapshot and the following ones are stored again as deltas from it ("rebased").
+ * <p>
+ * Compaction runs in small transactions of "notes.compaction.batch-size" Notes. Notes of the batch are locked
+ * for the transaction, so concurrent modifications of them wait for it (or are retried by NoteService) instead of
+ * being based on removed snapshot. Batch conflicting with live modifications is retried and given up after
+ * a few attempts - it is compacted by the next run.
+ * <p>
+ * Compaction runs every day according to "notes.compaction.cron" when "notes.compaction.enabled" is true
+ * and can be started at any time with {@link #compact()}. Report of every run is stored ({@link CompactionRun}).
+ *
+ * @author Adam Baranowski
+ */
+@Service
+public class NoteCompactionService {
+
+    private static final Logger log = LoggerFactory.getLogger(NoteCompactionService.class);
+
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+
+    private NoteRepository noteRepository;
+
+    private NoteVersionRepository noteVersionRepository;
+
+    private NoteChangeRepository noteChangeRepository;
+
+    private CompactionRunRepository compactionRunRepository;
+
+    private TransactionTemplate transactionTemplate;
+
+    private int keepLastVersions;
+
+    private int dailyAfterDays;
+
+    private int tombstoneDays;
+
+    private int batchSize;
+
+    /**
+     * Only one run at a time
+     */
+    private final ReentrantLock running = new ReentrantLock();
+
+    private ThreadPoolTaskScheduler scheduler;
+
+    @Autowired
+    public NoteCompactionService(NoteRepository noteRepository,
+                                 NoteVersionRepository noteVersionRepository,
+                                 NoteChangeRepository noteChangeRepository,
+                                 CompactionRunRepository compactionRunRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${notes.compaction.enabled:false}") boolean enabled,
+                                 @Value("${notes.compaction.cron:0 30 3 * * *}") String cron,
+                                 @Value("${notes.compaction.keep-last-versions:20}") int keepLastVersions,
+                                 @Value("${notes.compaction.daily-after-days:30}") int dailyAfterDays,
+                                 @Value("${notes.compaction.tombstone-days:90}") int tombstoneDays,
+                                 @Value("${notes.compaction.batch-size:20}") int batchSize) {
+        this.noteRepository = noteRepository;
+        this.noteVersionRepository = noteVersionRepository;
+        this.noteChangeRepository = noteChangeRepository;
+        this.compactionRunRepository = compactionRunRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        //the most recent version is always kept - Note is read from it
+        this.keepLastVersions = Math.max(keepLastVersions, 1);
+        this.dailyAfterDays = dailyAfterDays;
+        this.tombstoneDays = tombstoneDays;
+        this.batchSize = batchSize;
+        if (enabled) {
+            scheduler = new ThreadPoolTaskScheduler();
+            scheduler.setThreadNamePrefix("note-compaction-");
+            scheduler.initialize();
+            scheduler.schedule(this::compactQuietly, new CronTrigger(cron));
+        }
+    }
+
+    /**
+     * Runs compaction now
+     *
+     * @return report of the run
+     * @throws IllegalStateException when compaction is already running
+     */
+    public CompactionReportModel compact() {
+        if (!running.tryLock())
+            throw new IllegalStateException("Compaction is already running");
+        try {
+            long startNanos = System.nanoTime();
+            Long runId = transactionTemplate.execute(status ->
+                    compactionRunRepository.save(new CompactionRun(LocalDateTime.now())).getId());
+
+            compactVersions(runId);
+            purgeDeletedNotes(runId);
+
+            long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            CompactionRun run = updateRun(runId, finished -> {
+                finished.setFinished(LocalDateTime.now());
+                finished.setDurationMillis(durationMillis);
+            });
+            log.info("Compaction finished in {} ms: {} versions of {} notes removed, {} versions rebased, {} deleted notes purged, {} failed batches",
+                    durationMillis, run.getVersionsRemoved(), run.getNotesCompacted(), run.getVersionsRebased(),
+                    run.getNotesPurged(), run.getFailedBatches());
+            return CompactionReportModel.of(run);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    /**
+     * @return report of the last run, empty when compaction has never run
+     */
+    public Optional<CompactionReportModel> getLastReport() {
+        return compactionRunRepository.findFirstByOrderByIdDesc().map(CompactionReportModel::of);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null)
+            scheduler.shutdown();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("Compaction failed", e);
+        }
+    }
+
+    private void compactVersions(Long runId) {
+        long lastId = 0;
+        List<Long> page;
+        do {
+            page = noteVersionRepository.findIdsOfNotesWithMoreVersionsThan(keepLastVersions, lastId, PageRequest.of(0, batchSize));
+            if (!page.isEmpty()) {
+                List<Long> noteIds = page;
+                inBatchTransaction(runId, run -> compactVersionsOf(noteIds, run));
+                lastId = page.get(page.size() - 1);
+            }
+        } while (page.size() == batchSize);
+    }
+
+    private void purgeDeletedNotes(Long runId) {
+        LocalDateTime deletedBefore = LocalDateTime.now().minusDays(tombstoneDays);
+        long lastId = 0;
+        List<Long> page;
+        do {
+            page = noteRepository.findIdsOfDeletedBefore(deletedBefore, lastId, PageRequest.of(0, batchSize));
+            if (!page.isEmpty()) {
+                List<Long> noteIds = page;
+                inBatchTransaction(runId, run -> purge(noteIds, deletedBefore, run));
+                lastId = page.get(page.size() - 1);
+            }
+        } while (page.size() == batchSize);
+    }
+
+    /**
+     * Removes versions of given Notes which are not kept by retention policy
+     */
+    private void compactVersionsOf(List<Long> noteIds, CompactionRun run) {
+        noteRepository.findByIdInOrderByIdAsc(noteIds);
+        Map<Long, List<NoteVersion>> versionsByNote = noteVersionRepository.findByNoteIdInOrderByNoteIdAscVersionAsc(noteIds).stream()
+                .collect(Collectors.groupingBy(version -> version.getNote().getId()));
+
+        LocalDateTime dailyBefore = LocalDateTime.now().minusDays(dailyAfterDays);
+        List<Long> compactedNotes = new ArrayList<>();
+        List<Long> removedVersions = new ArrayList<>();
+        for (Map.Entry<Long, List<NoteVersion>> entry : versionsByNote.entrySet()) {
+            List<NoteVersion> removed = selectRemoved(entry.getValue(), dailyBefore);
+            if (removed.isEmpty())
+                continue;
+            run.setVersionsRebased(run.getVersionsRebased() + rebase(entry.getValue(), removed));
+            removed.forEach(version -> removedVersions.add(version.getId()));
+            compactedNotes.add(entry.getKey());
+        }
+        if (removedVersions.isEmpty())
+            return;
+
+        run.setChangesRemoved(run.getChangesRemoved() + noteChangeRepository.deleteByNoteVersionIds(removedVersions));
+        run.setVersionsRemoved(run.getVersionsRemoved() + noteVersionRepository.deleteByIds(removedVersions));
+        noteRepository.incrementLockVersion(compactedNotes);
+        run.setNotesCompacted(run.getNotesCompacted() + compactedNotes.size());
+    }
+
+    /**
+     * @param versions    all versions of Note ordered by version identifier
+     * @param dailyBefore versions older than this are kept only when they are the last ones of their day
+     * @return versions not kept by retention policy
+     */
+    private List<NoteVersion> selectRemoved(List<NoteVersion> versions, LocalDateTime dailyBefore) {
+        List<NoteVersion> removed = new ArrayList<>();
+        for (int i = 0; i < versions.size() - keepLastVersions; i++) {
+            NoteVersion version = versions.get(i);
+            boolean lastOfDay = !versions.get(i + 1).getDateTime().toLocalDate().equals(version.getDateTime().toLocalDate());
+            if (version.getDateTime().isBefore(dailyBefore) && !lastOfDay)
+                removed.add(version);
+        }
+        return removed;
+    }
+
+    /**
+     * Stores again kept deltas of removed snapshots - the first one becomes snapshot, the following ones
+     * become deltas from it
+     *
+     * @param versions all versions of Note ordered by version identifier
+     * @param removed  versions which are going to be removed
+     * @return number of rebased versions
+     */
+    private int rebase(List<NoteVersion> versions, List<NoteVersion> removed) {
+        Set<Long> removedIds = removed.stream().map(NoteVersion::getId).collect(Collectors.toSet());
+        List<NoteVersion> orphans = versions.stream()
+                .filter(version -> !version.isSnapshot() && removedIds.contains(version.getBase().getId())
+                        && !removedIds.contains(version.getId()))
+                .collect(Collectors.toList());
+        //contents have to be rebuilt before any base is changed
+        Map<NoteVersion, String> contents = new HashMap<>();
+        orphans.forEach(orphan -> contents.put(orphan, orphan.getContent()));
+
+        //removed snapshot id -> kept version which replaces it
+        Map<Long, NoteVersion> newBases = new HashMap<>();
+        for (NoteVersion orphan : orphans) {
+            String content = contents.get(orphan);
+            NoteVersion newBase = newBases.get(orphan.getBase().getId());
+            if (newBase == null) {
+                newBases.put(orphan.getBase().getId(), orphan);
+                orphan.setContent(content);
+            } else {
+                orphan.setDelta(newBase, ContentDelta.between(newBase.getContent(), content));
+            }
+        }
+        return orphans.size();
+    }
+
+    /**
+     * Removes given deleted Notes with all their versions and changes, except of their deletions
+     */
+    private void purge(List<Long> noteIds, LocalDateTime deletedBefore, CompactionRun run) {
+        //Note could have been created again in the meantime
+        List<Note> notes = noteRepository.findByIdInOrderByIdAsc(noteIds).stream()
+                .filter(note -> note.isDeleted()
+                        && (note.getDeletedAt() != null ? note.getDeletedAt() : note.getModified()).isBefore(deletedBefore))
+                .collect(Collectors.toList());
+        if (notes.isEmpty())
+            return;
+        List<Long> purgedIds = notes.stream().map(Note::getId).collect(Collectors.toList());
+
+        //deletion stays in change feed with id and title of purged Note
+        for (NoteChange deletion : noteChangeRepository.findLastChangesOfNotes(purgedIds)) {
+            if (deletion.getType() != NoteChange.Type.DELETED)
+                continue;
+            deletion.setPurgedNoteId(deletion.getNote().getId());
+            deletion.setPurgedTitle(deletion.getNote().getTitle());
+            deletion.setNote(null);
+        }
+        run.setChangesRemoved(run.getChangesRemoved() + noteChangeRepository.deleteByNoteIds(purgedIds));
+        run.setVersionsRemoved(run.getVersionsRemoved() + noteVersionRepository.deleteByNoteIds(purgedIds));
+        noteRepository.deleteByIds(purgedIds);
+        run.setNotesPurged(run.getNotesPurged() + purgedIds.size());
+        //revision counted from purged Notes plus one, so that revision changes
+        run.setRevisionOffset(run.getRevisionOffset() + 1
+                + notes.stream().mapToLong(note -> 1 + note.getLockVersion()).sum());
+    }
+
+    /**
+     * Runs part of compaction in its own transaction together with update of run report.
+     * Batch conflicting with live modifications is retried, after MAX_BATCH_ATTEMPTS it is given up.
+     * Any other violation of data integrity is not retried and fails the run.
+     */
+    private void inBatchTransaction(Long runId, Consumer<CompactionRun> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                updateRun(runId, batch);
+                return;
+            } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                if (e instanceof DataIntegrityViolationException && !NoteService.isVersionViolation((DataIntegrityViolationException) e))
+                    throw e;
+                if (attempt == MAX_BATCH_ATTEMPTS) {
+                    log.warn("Compaction batch given up after {} attempts", attempt, e);
+                    updateRun(runId, run -> run.setFailedBatches(run.getFailedBatches() + 1));
+                    return;
+                }
+            }
+        }
+    }
+
+    private CompactionRun updateRun(Long runId, Consumer<CompactionRun> update) {
+        return transactionTemplate.execute(status -> {
+            CompactionRun run = compactionRunRepository.findById(runId).orElseThrow(IllegalStateException::new);
+            update.accept(run);
+            return run;
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes committed changes of Notes ({@link NoteChangedEvent}) to subscribers as Server-Sent Events.
+ * <p>
+ * Subscribers do not hold any thread - their connections are asynchronous requests, and events are written
+ * by small pool of dispatcher threads ("notes.events.dispatcher-threads"). Listener only puts event into queue
+ * of every subscriber (see {@link NoteEventSubscriber}), so committing transaction never waits for clients.
+ * <p>
+ * Every subscriber has bounded queue ("notes.events.queue-capacity" Notes) in which edits of the same Note are coalesced.
+ * Subscriber whose queue overflows is disconnected. Idle connections get heartbeat comment
+ * ("notes.events.heartbeat-seconds"), so closed connections are detected and removed.
+ * <p>
+ * Events are not a cursor of change feed (/archive/changes) and have no SSE id. They are sent in order of commits,
+ * not of change ids, and coalesced event keeps position of the replaced one, so change of greater id can be sent
+ * before change of smaller id. Client which needs every change has to read the feed with its own cursor
+ * (the last id returned by the feed) after reconnecting - events only tell it that there is something to read.
+ *
+ * @author Adam Baranowski
+ */
+@Component
+public class NoteEventBroadcaster {
+
+    private final Set<NoteEventSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService dispatcher;
+
+    private int queueCapacity;
+
+    private int maxSubscribers;
+
+    /**
+     * Timeout of single subscription in milliseconds, client reconnects after it
+     */
+    private long timeout;
+
+    @Autowired
+    public NoteEventBroadcaster(@Value("${notes.events.dispatcher-threads:2}") int dispatcherThreads,
+                                @Value("${notes.events.queue-capacity:100}") int queueCapacity,
+                                @Value("${notes.events.max-subscribers:10000}") int maxSubscribers,
+                                @Value("${notes.events.timeout-minutes:30}") long timeoutMinutes,
+                                @Value("${notes.events.heartbeat-seconds:30}") long heartbeatSeconds) {
+        this.queueCapacity = queueCapacity;
+        this.maxSubscribers = maxSubscribers;
+        this.timeout = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.dispatcher = Executors.newScheduledThreadPool(dispatcherThreads, new CustomizableThreadFactory("note-events-"));
+        this.dispatcher.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates new subscription
+     *
+     * @return emitter of the subscription, to be returned from controller
+     * @throws IllegalStateException when there are already maxSubscribers subscribers
+     */
+    public SseEmitter subscribe() {
+        if (subscribers.size() >= maxSubscribers)
+            throw new IllegalStateException("Too many subscribers");
+        SseEmitter emitter = new SseEmitter(timeout);
+        NoteEventSubscriber subscriber = new NoteEventSubscriber(emitter, queueCapacity);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * @return number of connected subscribers
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Queues committed change for every subscriber
+     *
+     * @param event change of Note
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNoteChanged(NoteChangedEvent event) {
+        for (NoteEventSubscriber subscriber : subscribers) {
+            if (!subscriber.offer(event)) {
+                //slow consumer - it has to resume from change feed
+                remove(subscriber);
+                subscriber.getEmitter().complete();
+            } else if (subscriber.schedule()) {
+                dispatcher.execute(() -> drain(subscriber));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        for (NoteEventSubscriber subscriber : subscribers) {
+            remove(subscriber);
+            subscriber.getEmitter().complete();
+        }
+    }
+
+    /**
+     * Sends waiting events of subscriber until its queue is empty. Runs on dispatcher thread,
+     * every subscriber is drained by at most one thread at a time.
+     */
+    private void drain(NoteEventSubscriber subscriber) {
+        List<NoteChangedEvent> events;
+        while (!(events = subscriber.takePending()).isEmpty()) {
+            if (subscriber.isClosed())
+                continue;
+            try {
+                for (NoteChangedEvent event : events) {
+                    subscriber.getEmitter().send(toSse(event));
+                }
+            } catch (IOException | IllegalStateException e) {
+                //client disconnected
+                remove(subscriber);
+                subscriber.getEmitter().completeWithError(e);
+            }
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (NoteEventSubscriber subscriber : subscribers) {
+            try {
+                subscriber.getEmitter().send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException | IllegalStateException e) {
+                remove(subscriber);
+                subscriber.getEmitter().completeWithError(e);
+            }
+        }
+    }
+
+    private void remove(NoteEventSubscriber subscriber) {
+        subscriber.close();
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Event without id - change id is not monotonic in the stream, so it must not be used as Last-Event-ID
+     */
+    private static SseEmitter.SseEventBuilder toSse(NoteChangedEvent event) {
+        return SseEmitter.event()
+                .name(event.getType().name().toLowerCase(Locale.ROOT))
+                .data(event, MediaType.APPLICATION_JSON);
+    }
+}
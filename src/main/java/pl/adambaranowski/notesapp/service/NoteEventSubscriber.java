@@ -0,0 +1,98 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Single subscriber of note events - its SSE connection and queue of events waiting to be sent.
+ * <p>
+ * Queue keeps at most one event per Note: event of Note which is already waiting replaces it
+ * (keeping its position), so rapid edits of the same Note are sent as one event with the latest state.
+ * Queue is bounded - subscriber which does not keep up is dropped (see {@link NoteEventBroadcaster}).
+ *
+ * @author Adam Baranowski
+ */
+class NoteEventSubscriber {
+
+    private final SseEmitter emitter;
+
+    private final int capacity;
+
+    /**
+     * note id -> the latest waiting event of Note, in order of the first waiting event. Guarded by this
+     */
+    private final LinkedHashMap<Long, NoteChangedEvent> pending = new LinkedHashMap<>();
+
+    /**
+     * True when subscriber is waiting for dispatcher or being drained by it. Guarded by this
+     */
+    private boolean scheduled;
+
+    private volatile boolean closed;
+
+    NoteEventSubscriber(SseEmitter emitter, int capacity) {
+        this.emitter = emitter;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds event to the queue, coalescing it with waiting event of the same Note
+     *
+     * @param event committed change of Note
+     * @return false when queue is full (event has not been added), true otherwise
+     */
+    synchronized boolean offer(NoteChangedEvent event) {
+        NoteChangedEvent waiting = pending.get(event.getNoteId());
+        if (waiting != null) {
+            if (event.isNewerThan(waiting))
+                pending.put(event.getNoteId(), event);
+            return true;
+        }
+        if (pending.size() >= capacity)
+            return false;
+        pending.put(event.getNoteId(), event);
+        return true;
+    }
+
+    /**
+     * Marks subscriber as scheduled for draining
+     *
+     * @return true when it has not been scheduled before - caller has to hand it over to dispatcher
+     */
+    synchronized boolean schedule() {
+        if (scheduled || pending.isEmpty())
+            return false;
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * Takes all waiting events. When there are none, subscriber stops being scheduled.
+     *
+     * @return waiting events in order, empty when queue is empty
+     */
+    synchronized List<NoteChangedEvent> takePending() {
+        if (pending.isEmpty()) {
+            scheduled = false;
+            return List.of();
+        }
+        List<NoteChangedEvent> events = new ArrayList<>(pending.values());
+        pending.clear();
+        return events;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+}
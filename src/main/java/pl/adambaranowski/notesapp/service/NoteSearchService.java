@@ -0,0 +1,253 @@
+package pl.adambaranowski.notesapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteResponseModel;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Full-text search over titles and recent content of not-deleted notes.
+ * <p>
+ * Search is served from in-process inverted index: for every word it keeps sorted ids of notes containing it.
+ * Query walks ids of its rarest word in ascending order and stops when limit of matching notes is found,
+ * so its cost depends on the limit and on rarity of words, not on number of all notes.
+ * Found notes are read with one query (or from NoteCache).
+ * Index is rebuilt from database on application start and then updated by {@link NoteChangedEvent}s
+ * after every committed change of Note.
+ *
+ * @author Adam Baranowski
+ */
+@Service
+public class NoteSearchService {
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    /**
+     * How long deleted note is remembered - long enough for changes committed before deletion to be delivered
+     */
+    private static final Duration TOMBSTONE_TTL = Duration.ofMinutes(1);
+
+    private NoteRepository noteRepository;
+
+    private NoteService noteService;
+
+    /**
+     * Number of notes read from database at once when index is rebuilt
+     */
+    private int rebuildPageSize;
+
+    /**
+     * word -> ids of notes containing it
+     */
+    private final ConcurrentHashMap<String, Posting> postings = new ConcurrentHashMap<>();
+
+    /**
+     * note id -> indexed state of not-deleted note, used to remove old words when note changes
+     */
+    private final ConcurrentHashMap<Long, IndexedNote> indexedNotes = new ConcurrentHashMap<>();
+
+    /**
+     * id of recently deleted note -> version number of its deletion, expires after TOMBSTONE_TTL
+     */
+    private final Cache<Long, Integer> deletedVersions = Caffeine.newBuilder().expireAfterWrite(TOMBSTONE_TTL).build();
+
+    @Autowired
+    public NoteSearchService(NoteRepository noteRepository, NoteService noteService,
+                             @Value("${notes.search.rebuild-page-size:500}") int rebuildPageSize) {
+        this.noteRepository = noteRepository;
+        this.noteService = noteService;
+        this.rebuildPageSize = rebuildPageSize;
+    }
+
+    /**
+     * Finds not-deleted notes containing all words of query (in title or recent content).
+     * Words are compared case-insensitively.
+     *
+     * @param query one or more words
+     * @param limit maximal number of returned notes
+     * @return found notes ordered by id, empty list when query has no words
+     */
+    public List<NoteResponseModel> search(String query, int limit) {
+        //note deleted after index lookup is not returned
+        return noteService.getByIds(findIds(query, limit));
+    }
+
+    /**
+     * @param query one or more words
+     * @param limit maximal number of returned ids
+     * @return ids of notes containing all words of query, in ascending order
+     */
+    public List<Long> findIds(String query, int limit) {
+        Set<String> words = tokenize(query);
+        if (words.isEmpty())
+            return Collections.emptyList();
+
+        List<Posting> matching = new ArrayList<>(words.size());
+        for (String word : words) {
+            Posting posting = postings.get(word);
+            if (posting == null)
+                return Collections.emptyList();
+            matching.add(posting);
+        }
+        //intersection walks the rarest word in ascending order and stops at limit
+        matching.sort(Comparator.comparingInt(posting -> posting.size));
+        List<Posting> others = matching.subList(1, matching.size());
+        List<Long> found = new ArrayList<>();
+        for (Long id : matching.get(0).ids) {
+            if (found.size() >= limit)
+                break;
+            if (containedInAll(others, id))
+                found.add(id);
+        }
+        return found;
+    }
+
+    /**
+     * Updates index after committed change of Note
+     *
+     * @param event change of Note
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNoteChanged(NoteChangedEvent event) {
+        boolean deleted = event.getType() == NoteChangedEvent.Type.DELETED;
+        index(event.getNoteId(), event.getTitle(), event.getContent(), event.getVersionNumber(), deleted);
+    }
+
+    /**
+     * Builds index from all not-deleted notes in database. Notes are read page by page.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long lastId = 0;
+        List<Note> page;
+        do {
+            page = noteRepository.findByDeletedFalseAndIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, rebuildPageSize));
+            for (Note note : page) {
+                index(note.getId(), note.getTitle(), note.getRecentContent(), note.getRecentVersionNumber(), false);
+                lastId = note.getId();
+            }
+        } while (page.size() == rebuildPageSize);
+    }
+
+    /**
+     * Replaces indexed words of note. Changes of the same note are applied one at a time
+     * and change older than already indexed one is ignored. Deleted note is kept only as short-lived tombstone,
+     * so the index does not grow with deleted notes.
+     */
+    private void index(Long id, String title, String content, int versionNumber, boolean deleted) {
+        indexedNotes.compute(id, (noteId, indexed) -> {
+            if (indexed != null && indexed.versionNumber > versionNumber)
+                return indexed;
+            Integer deletedVersion = deletedVersions.getIfPresent(noteId);
+            if (indexed == null && deletedVersion != null && deletedVersion >= versionNumber)
+                return null;
+
+            Set<String> words = deleted ? Collections.emptySet() : tokenize(title + " " + content);
+            if (indexed != null) {
+                for (String word : indexed.words) {
+                    if (!words.contains(word))
+                        removePosting(word, noteId);
+                }
+            }
+            for (String word : words) {
+                addPosting(word, noteId);
+            }
+            if (deleted) {
+                deletedVersions.put(noteId, versionNumber);
+                return null;
+            }
+            deletedVersions.invalidate(noteId);
+            return new IndexedNote(versionNumber, words);
+        });
+    }
+
+    /**
+     * @return number of indexed (not-deleted) notes
+     */
+    int getIndexedNoteCount() {
+        return indexedNotes.size();
+    }
+
+    private static boolean containedInAll(List<Posting> postings, Long id) {
+        for (Posting posting : postings) {
+            if (!posting.ids.contains(id))
+                return false;
+        }
+        return true;
+    }
+
+    //both posting operations are atomic per word, so removing last id never loses concurrently added one
+    private void addPosting(String word, Long id) {
+        postings.compute(word, (w, posting) -> {
+            Posting updated = posting == null ? new Posting() : posting;
+            if (updated.ids.add(id))
+                updated.size++;
+            return updated;
+        });
+    }
+
+    private void removePosting(String word, Long id) {
+        postings.computeIfPresent(word, (w, posting) -> {
+            if (posting.ids.remove(id))
+                posting.size--;
+            return posting.size == 0 ? null : posting;
+        });
+    }
+
+    private static Set<String> tokenize(String text) {
+        if (text == null)
+            return Collections.emptySet();
+        return Arrays.stream(WORD_SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(word -> !word.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Ids of notes containing single word in ascending order. Updated only inside postings.compute of its word.
+     */
+    private static class Posting {
+
+        private final ConcurrentSkipListSet<Long> ids = new ConcurrentSkipListSet<>();
+
+        /**
+         * Size of ids - size() of ConcurrentSkipListSet walks the whole set
+         */
+        private volatile int size;
+    }
+
+    /**
+     * Indexed state of single note
+     */
+    private static class IndexedNote {
+
+        private final int versionNumber;
+
+        private final Set<String> words;
+
+        IndexedNote(int versionNumber, Set<String> words) {
+            this.versionNumber = versionNumber;
+            this.words = words;
+        }
+    }
+}
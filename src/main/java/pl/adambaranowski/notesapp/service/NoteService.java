@@ -1,25 +1,60 @@
 package pl.adambaranowski.notesapp.service;
 
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import pl.adambaranowski.notesapp.exception.NoteAlreadyExistException;
+import pl.adambaranowski.notesapp.exception.NoteModificationConflictException;
 import pl.adambaranowski.notesapp.exception.NoteNotFoundException;
+import pl.adambaranowski.notesapp.exception.NoteVersionMismatchException;
 import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteBatchResultModel;
+import pl.adambaranowski.notesapp.model.NoteChange;
 import pl.adambaranowski.notesapp.model.NoteRequestModel;
 import pl.adambaranowski.notesapp.model.NoteResponseModel;
 import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.model.NoteVersionKey;
+import pl.adambaranowski.notesapp.model.NoteVersionModel;
 import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.repository.NoteVersionRepository;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Intermediary between note repository and note controller.
  * <p>
  * It is responsible for creating and manipulating model objects
+ * <p>
+ * Reading Notes never touches NoteVersions - current state of Note is kept
+ * in its "recent" fields, which are updated together with every new NoteVersion.
+ * Single notes read by id or title are additionally cached in NoteCache, which is invalidated
+ * by every operation changing Note.
+ * <p>
+ * Every change of Note is stored in change log ({@link NoteChangeLog}) and published as {@link NoteChangedEvent}.
+ * <p>
+ * Concurrent modifications of the same Note are detected by optimistic locking (Note.lockVersion and unique
+ * version number of NoteVersion) instead of locking rows. Modification which loses the race is retried
+ * in new transaction, at most maxAttempts times.
  *
  * @author Adam Baranowski
  */
@@ -28,9 +63,40 @@ public class NoteService {
 
     private NoteRepository noteRepository;
 
+    private NoteVersionRepository noteVersionRepository;
+
+    private NoteCache noteCache;
+
+    private NoteChangeLog noteChangeLog;
+
+    /**
+     * Maximal distance (in versions) between delta version and its base snapshot.
+     * Every snapshotInterval-th version (at least) is stored with full content. 1 means that every version is snapshot.
+     */
+    private int snapshotInterval;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Maximal number of attempts of modification conflicting with concurrent modifications of the same Note
+     */
+    private int maxAttempts;
+
     @Autowired
-    public NoteService(NoteRepository noteRepository) {
+    public NoteService(NoteRepository noteRepository, NoteVersionRepository noteVersionRepository, NoteCache noteCache,
+                       NoteChangeLog noteChangeLog, ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                       @Value("${notes.versions.snapshot-interval:20}") int snapshotInterval,
+                       @Value("${notes.modify.max-attempts:5}") int maxAttempts) {
         this.noteRepository = noteRepository;
+        this.noteVersionRepository = noteVersionRepository;
+        this.noteCache = noteCache;
+        this.noteChangeLog = noteChangeLog;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotInterval = snapshotInterval;
+        this.maxAttempts = maxAttempts;
     }
 
     /**
@@ -39,36 +105,76 @@ public class NoteService {
      * When Note of given title had been created and deleted
      * new creation means that there is created new version of note
      * and "deleted" is set to false.
+     * <p>
+     * It needs only one (indexed) lookup by title. When concurrent request inserts Note of the same title
+     * between the lookup and the insert, unique index on title rejects the second insert.
+     * Concurrent re-creations of the same deleted Note conflict on its version - creation is retried,
+     * so all but one of them see that Note already exists.
      *
      * @param noteRequestModel - created automatically by Jackson Library from request JSON
      * @return Note model of created Note
      * @throws NoteAlreadyExistException - when user tries to create note of existing title
+     * @throws NoteModificationConflictException when concurrent modifications did not let it succeed in maxAttempts
      */
     public Note createNewNote(NoteRequestModel noteRequestModel) {
+        return inTransactionWithRetry(() -> {
+            Optional<Note> byTitle = noteRepository.findByTitle(noteRequestModel.getTitle());
 
+            //Throw an exception when user tries to create note of existing title
+            if (byTitle.isPresent() && !byTitle.get().isDeleted())
+                throw new NoteAlreadyExistException();
 
-        Optional<Note> byTitle = noteRepository.findByTitle(noteRequestModel.getTitle());
+            //When Note of given title had been created and deleted
+            //new creation means that there is created new version of note
+            //and "deleted" is set to false
+            //It is important for tracking modifications of Note
+            if (byTitle.isPresent() && byTitle.get().isDeleted()) {
+                Note existingNote = byTitle.get();
+                existingNote.setDeleted(false);
+                existingNote.setDeletedAt(null);
+                NoteVersion version = addNewVersion(existingNote, noteRequestModel.getContent());
+                recordChange(NoteChange.Type.CREATED, existingNote, version);
+                //the same as in modifyNote - conflict has to be reported inside the attempt
+                noteRepository.flush();
+                return existingNote;
+            }
 
-        //Throw an exception when user tries to create note of existing title
-        if (byTitle.isPresent() && !byTitle.get().isDeleted())
-            throw new NoteAlreadyExistException();
+            Note note = newNote(noteRequestModel);
+            try {
+                //flushing immediately, so that unique index violation is reported here, not at commit
+                noteRepository.saveAndFlush(note);
+            } catch (DataIntegrityViolationException e) {
+                //Note of the same title has been created concurrently, any other violation is rethrown
+                if (isTitleViolation(e))
+                    throw new NoteAlreadyExistException();
+                throw e;
+            }
+            recordChange(NoteChange.Type.CREATED, note, note.getNoteVersions().get(0));
+            return note;
+        });
+    }
 
-        //When Note of given title had been created and deleted
-        //new creation means that there is created new version of note
-        //and "deleted" is set to false
-        //It is important for tracking modifications of Note
-        if (byTitle.isPresent() && byTitle.get().isDeleted()) {
-            Note existingNote = byTitle.get();
-            existingNote.setDeleted(false);
-            modifyNote(noteRequestModel);
-            return existingNote;
-        }
+    /**
+     * @return true when exception is violation of unique index on title of Note
+     */
+    private static boolean isTitleViolation(DataIntegrityViolationException e) {
+        return isViolationOf(e, Note.TITLE_CONSTRAINT);
+    }
 
-        Note note = new Note(noteRequestModel.getTitle());
-        NoteVersion noteVersion = new NoteVersion(1, noteRequestModel.getContent(), LocalDateTime.now(), note);
-        note.getNoteVersions().add(noteVersion);
-        noteRepository.save(note);
-        return note;
+    /**
+     * @return true when exception is violation of unique index on version number of Note
+     * - concurrent modification of the same Note has added version of the same number
+     */
+    static boolean isVersionViolation(DataIntegrityViolationException e) {
+        return isViolationOf(e, NoteVersion.VERSION_CONSTRAINT);
+    }
+
+    private static boolean isViolationOf(DataIntegrityViolationException e, String constraint) {
+        if (!(e.getCause() instanceof ConstraintViolationException))
+            return false;
+        String constraintName = ((ConstraintViolationException) e.getCause()).getConstraintName();
+        //databases report name of index in different forms (case, schema, columns)
+        return constraintName != null && constraintName.toLowerCase(Locale.ROOT).contains(constraint);
     }
 
     /**
@@ -77,56 +183,268 @@ public class NoteService {
      * @return all not-deleted Notes as NoteResponseModel List(ArrayList)
      */
     public List<NoteResponseModel> getAllNotes() {
-        List<Note> all = noteRepository.findAll();
-        return all.stream()
-                .filter(note -> !note.isDeleted())
-                .map(note -> new NoteResponseModel(
-                        note.getId(),
-                        note.getTitle(),
-                        note.getRecentVersion().getContent(),
-                        note.getFirstVersion().getDateTime(),
-                        note.getRecentVersion().getDateTime()
-                )).collect(Collectors.toCollection(ArrayList::new));
+        return noteRepository.findByDeletedFalseOrderByIdAsc().stream()
+                .map(this::toResponseModel)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Single page of not-deleted Notes for JSON response.
+     * <p>
+     * Uses keyset pagination - next page starts right after id of the last Note of previous page,
+     * so the cost of a request depends only on page size, not on number of Notes.
+     *
+     * @param afterId id of last Note of previous page, 0 for the first page
+     * @param limit   maximal number of returned Notes
+     * @return not-deleted Notes with id greater than afterId, ordered by id
+     */
+    public List<NoteResponseModel> getAllNotes(long afterId, int limit) {
+        return noteRepository.findByDeletedFalseAndIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit)).stream()
+                .map(this::toResponseModel)
+                .collect(Collectors.toCollection(ArrayList::new));
     }
 
     /**
      * Modify (set new content) note of title given in noteRequestModel
      *
      * @param noteRequestModel contains title and new content
+     * @return version identifier of new version
      * @throws NoteNotFoundException when note of given title does not exist
+     * @throws NoteModificationConflictException when concurrent modifications did not let it succeed in maxAttempts
      */
-    public void modifyNote(NoteRequestModel noteRequestModel) {
-        Optional<Note> byTitle = noteRepository.findByTitle(noteRequestModel.getTitle());
-        ;
-        if (byTitle.isPresent() && !byTitle.get().isDeleted()) {
-            Note found = byTitle.get();
-            NoteVersion recentVersion = found.getRecentVersion();
-            NoteVersion newVersion = new NoteVersion(
-                    recentVersion.getVersion() + 1,
-                    noteRequestModel.getContent(),
-                    LocalDateTime.now(),
-                    found
-            );
-            found.getNoteVersions().add(newVersion);
-            //NoteVersion is saved automatically by Hibernate
-            noteRepository.save(found);
-        } else {
-            throw new NoteNotFoundException();
+    public int modifyNote(NoteRequestModel noteRequestModel) {
+        return modifyNote(noteRequestModel, null).getVersion();
+    }
+
+    /**
+     * Modify (set new content) note of title given in noteRequestModel, but only when its most recent
+     * version is the expected one (conditional update - client modifies the version it has seen).
+     *
+     * @param noteRequestModel contains title and new content
+     * @param expectedVersion  key of the most recent version, null to modify any version. Note of the same title
+     *                         with other id (created after the expected one was purged) does not match it
+     * @return key of new version
+     * @throws NoteNotFoundException when note of given title does not exist
+     * @throws NoteVersionMismatchException when the most recent version is not the expected one
+     * @throws NoteModificationConflictException when concurrent modifications did not let it succeed in maxAttempts
+     */
+    public NoteVersionKey modifyNote(NoteRequestModel noteRequestModel, NoteVersionKey expectedVersion) {
+        return inTransactionWithRetry(() -> {
+            Optional<Note> byTitle = noteRepository.findByTitle(noteRequestModel.getTitle());
+            if (byTitle.isEmpty() || byTitle.get().isDeleted())
+                throw new NoteNotFoundException();
+
+            Note note = byTitle.get();
+            if (expectedVersion != null && !expectedVersion.equals(NoteVersionKey.of(note)))
+                throw new NoteVersionMismatchException();
+
+            NoteVersion version = addNewVersion(note, noteRequestModel.getContent());
+            recordChange(NoteChange.Type.MODIFIED, note, version);
+            //flushing inside the attempt, so that conflict is reported here even when called in outer transaction
+            noteRepository.flush();
+            return NoteVersionKey.of(note);
+        });
+    }
+
+    /**
+     * Modifies many existing notes of given ids in one transaction (e.g. edits collected by {@link NoteWriteBuffer}).
+     * Unlike {@link #saveNotes(List)} it never creates a note - notes which do not exist (anymore)
+     * or are deleted are skipped.
+     *
+     * @param contentsById new contents of notes by their ids
+     * @return number of modified notes
+     * @throws NoteModificationConflictException when concurrent modifications did not let it succeed in maxAttempts
+     */
+    public int modifyNotes(Map<Long, String> contentsById) {
+        return inTransactionWithRetry(() -> {
+            List<Note> notes = noteRepository.findAllById(contentsById.keySet());
+            Map<Long, NoteVersion> lastSnapshots = findLastSnapshotsOf(notes);
+
+            int modified = 0;
+            for (Note note : notes) {
+                if (note.isDeleted())
+                    continue;
+                NoteVersion version = addNewVersion(note, contentsById.get(note.getId()), lastSnapshots);
+                recordChange(NoteChange.Type.MODIFIED, note, version);
+                modified++;
+            }
+            //the same as in modifyNote - conflict has to be reported inside the attempt
+            noteRepository.flush();
+            return modified;
+        });
+    }
+
+    /**
+     * Creates or modifies many notes in one transaction.
+     * <p>
+     * For every note of the batch: when Note of its title does not exist (or is deleted) it is created,
+     * otherwise new version of Note is added. Notes are processed in order, so the same title
+     * can appear in the batch many times.
+     * <p>
+     * All existing Notes are found with one query and their last snapshots with another one - nothing is read
+     * for single note of the batch, so no insert is flushed before commit. New Notes and NoteVersions take ids from
+     * pooled sequences, so Hibernate sends their inserts in JDBC batches at commit.
+     * Any database error rolls back the whole batch. Batch conflicting with concurrent modification
+     * of any of its Notes is retried as a whole.
+     *
+     * @param noteRequestModels notes to create or modify
+     * @return result for every given note, in the same order
+     * @throws NoteModificationConflictException when concurrent modifications did not let it succeed in maxAttempts
+     */
+    public List<NoteBatchResultModel> saveNotes(List<NoteRequestModel> noteRequestModels) {
+        return inTransactionWithRetry(() -> saveNotesInTransaction(noteRequestModels));
+    }
+
+    private List<NoteBatchResultModel> saveNotesInTransaction(List<NoteRequestModel> noteRequestModels) {
+        Set<String> titles = noteRequestModels.stream()
+                .map(NoteRequestModel::getTitle)
+                .collect(Collectors.toSet());
+        Map<String, Note> notesByTitle = noteRepository.findByTitleIn(titles).stream()
+                .collect(Collectors.toMap(Note::getTitle, Function.identity()));
+        Map<Long, NoteVersion> lastSnapshots = findLastSnapshotsOf(notesByTitle.values());
+
+        List<NoteBatchResultModel> results = new ArrayList<>(noteRequestModels.size());
+        for (NoteRequestModel noteRequestModel : noteRequestModels) {
+            Note note = notesByTitle.get(noteRequestModel.getTitle());
+            NoteBatchResultModel.Status status;
+            NoteVersion version;
+            if (note == null) {
+                note = newNote(noteRequestModel);
+                noteRepository.save(note);
+                notesByTitle.put(note.getTitle(), note);
+                version = note.getNoteVersions().get(0);
+                lastSnapshots.put(note.getId(), version);
+                status = NoteBatchResultModel.Status.CREATED;
+            } else if (note.isDeleted()) {
+                note.setDeleted(false);
+                note.setDeletedAt(null);
+                version = addNewVersion(note, noteRequestModel.getContent(), lastSnapshots);
+                status = NoteBatchResultModel.Status.CREATED;
+            } else {
+                version = addNewVersion(note, noteRequestModel.getContent(), lastSnapshots);
+                status = NoteBatchResultModel.Status.MODIFIED;
+            }
+            recordChange(status == NoteBatchResultModel.Status.CREATED
+                    ? NoteChange.Type.CREATED : NoteChange.Type.MODIFIED, note, version);
+            results.add(new NoteBatchResultModel(note.getId(), note.getTitle(), status));
+        }
+        //the same as in modifyNote - conflict has to be reported inside the attempt
+        noteRepository.flush();
+        return results;
+    }
+
+    /**
+     * Runs operation in transaction. When it fails because of concurrent modification of the same Note
+     * (optimistic lock failure or duplicated version number), it is run again in new transaction
+     * - it reads current state of Note, so the retry cannot lose the concurrent modification.
+     * Any other violation of data integrity is not retried and is rethrown unchanged.
+     *
+     * @param operation operation changing Notes
+     * @return result of operation
+     * @throws NoteModificationConflictException when all maxAttempts attempts failed
+     */
+    private <T> T inTransactionWithRetry(Supplier<T> operation) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> operation.get());
+            } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                if (e instanceof DataIntegrityViolationException && !isVersionViolation((DataIntegrityViolationException) e))
+                    throw e;
+                if (attempt >= maxAttempts)
+                    throw new NoteModificationConflictException(e);
+            }
         }
     }
 
+    /**
+     * Builds new Note with its first NoteVersion. Note is not saved.
+     *
+     * @param noteRequestModel title and content of new Note
+     * @return new Note
+     */
+    private Note newNote(NoteRequestModel noteRequestModel) {
+        Note note = new Note(noteRequestModel.getTitle());
+        NoteVersion noteVersion = new NoteVersion(1, noteRequestModel.getContent(), LocalDateTime.now(), note);
+        note.getNoteVersions().add(noteVersion);
+        note.updateRecentVersion(noteVersion);
+        return note;
+    }
+
+    /**
+     * Appends new NoteVersion with given content to the Note.
+     * <p>
+     * Only new NoteVersion is inserted - previous versions are not loaded at all, except of the last snapshot.
+     * New version is stored as delta from the last snapshot, unless snapshot is older than
+     * snapshotInterval versions or delta would not be much smaller than full content - then it becomes a snapshot.
+     *
+     * @param note    Note being modified
+     * @param content content of new version
+     * @return new NoteVersion
+     */
+    private NoteVersion addNewVersion(Note note, String content) {
+        NoteVersion lastSnapshot = noteVersionRepository.findFirstByNoteIdAndBaseIsNullOrderByVersionDesc(note.getId()).orElse(null);
+        return addNewVersion(note, content, lastSnapshot);
+    }
+
+    /**
+     * Appends new NoteVersion to Note of the batch. Last snapshot is taken from given map (read up front
+     * for the whole batch), which is updated when new version becomes snapshot.
+     *
+     * @param note          Note being modified
+     * @param content       content of new version
+     * @param lastSnapshots last snapshots of Notes of the batch by Note id
+     * @return new NoteVersion
+     */
+    private NoteVersion addNewVersion(Note note, String content, Map<Long, NoteVersion> lastSnapshots) {
+        NoteVersion newVersion = addNewVersion(note, content, lastSnapshots.get(note.getId()));
+        if (newVersion.isSnapshot())
+            lastSnapshots.put(note.getId(), newVersion);
+        return newVersion;
+    }
+
+    private NoteVersion addNewVersion(Note note, String content, NoteVersion lastSnapshot) {
+        int versionNumber = note.getRecentVersionNumber() + 1;
+        LocalDateTime now = LocalDateTime.now();
+        NoteVersion newVersion = Optional.ofNullable(lastSnapshot)
+                .filter(snapshot -> versionNumber - snapshot.getVersion() < snapshotInterval)
+                .map(snapshot -> NoteVersion.deltaOf(versionNumber, content, now, note, snapshot))
+                .filter(delta -> delta.getStoredBytes() * 2 < delta.getContentBytes())
+                .orElseGet(() -> new NoteVersion(versionNumber, content, now, note));
+        noteVersionRepository.save(newVersion);
+        note.updateRecentVersion(newVersion);
+        noteRepository.save(note);
+        noteCache.evict(note.getId(), note.getTitle());
+        return newVersion;
+    }
+
+    /**
+     * @param notes Notes of the batch
+     * @return the last snapshot of every given Note by Note id
+     */
+    private Map<Long, NoteVersion> findLastSnapshotsOf(Collection<Note> notes) {
+        if (notes.isEmpty())
+            return new HashMap<>();
+        List<Long> ids = notes.stream().map(Note::getId).collect(Collectors.toList());
+        return noteVersionRepository.findLastSnapshotsOfNotes(ids).stream()
+                .collect(Collectors.toMap(snapshot -> snapshot.getNote().getId(), Function.identity(), (a, b) -> a, HashMap::new));
+    }
+
     /**
      * Set "deleted" of note of given title to true. Note is still available in archiveAPI
      *
      * @param title title of deleted note
      * @throws NoteNotFoundException when note of given title does not exist or has "deleted" set to true
      */
+    @Transactional
     public void removeNoteByTitle(String title) {
         Optional<Note> byTitle = noteRepository.findByTitle(title);
         if (byTitle.isPresent() && !byTitle.get().isDeleted()) {
             Note found = byTitle.get();
             found.setDeleted(true);
+            found.setDeletedAt(LocalDateTime.now());
             noteRepository.save(found);
+            noteCache.evict(found.getId(), found.getTitle());
+            recordChange(NoteChange.Type.DELETED, found, null);
         } else {
             throw new NoteNotFoundException();
         }
@@ -138,60 +456,221 @@ public class NoteService {
      * @param id id of deleted note
      * @throws NoteNotFoundException when note of given id does not exist or has "deleted" set to true
      */
+    @Transactional
     public void removeNoteById(Long id) {
         Optional<Note> byId = noteRepository.findById(id);
         if (byId.isPresent() && !byId.get().isDeleted()) {
             Note found = byId.get();
             found.setDeleted(true);
+            found.setDeletedAt(LocalDateTime.now());
             noteRepository.save(found);
+            noteCache.evict(found.getId(), found.getTitle());
+            recordChange(NoteChange.Type.DELETED, found, null);
         } else {
             throw new NoteNotFoundException();
         }
     }
 
     /**
-     * Returning note (NoteResponseModel for JSON) of given title
+     * Returning note (NoteResponseModel for JSON) of given title. Served from NoteCache when possible.
      *
      * @param title title of indicated Note
      * @return NoteResponseModel of Note
      * @throws NoteNotFoundException when note of given title does not exist or has "deleted" set to true
      */
     public NoteResponseModel getByTitle(String title) {
+        return noteCache.getByTitle(title, this::loadByTitle);
+    }
+
+    /**
+     * Loads note of given title from database - used when it is not in NoteCache
+     */
+    private NoteResponseModel loadByTitle(String title) {
         Optional<Note> byTitle = noteRepository.findByTitle(title);
         if (byTitle.isPresent() && !byTitle.get().isDeleted()) {
-            Note found = byTitle.get();
-            return new NoteResponseModel(
-                    found.getId(),
-                    found.getTitle(),
-                    found.getRecentVersion().getContent(),
-                    found.getFirstVersion().getDateTime(),
-                    found.getRecentVersion().getDateTime()
-            );
+            return toResponseModel(byTitle.get());
         } else {
             throw new NoteNotFoundException();
         }
     }
 
     /**
-     * Returning note (NoteResponseModel for JSON) of given id
+     * Returning note (NoteResponseModel for JSON) of given id. Served from NoteCache when possible.
      *
      * @param id id of indicated Note
      * @return NoteResponseModel of Note
      * @throws NoteNotFoundException when note of given id does not exist or has "deleted" set to true
      */
     public NoteResponseModel getById(Long id) {
+        return noteCache.getById(id, this::loadById);
+    }
+
+    /**
+     * Returning notes of given ids. Notes which are not in NoteCache are loaded with one query.
+     *
+     * @param ids ids of indicated Notes
+     * @return NoteResponseModels in order of given ids, without Notes which do not exist or have "deleted" set to true
+     */
+    public List<NoteResponseModel> getByIds(List<Long> ids) {
+        Map<Long, NoteResponseModel> found = noteCache.getAllById(ids, this::loadByIds);
+        return ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Loads not-deleted notes of given ids from database - used for notes which are not in NoteCache
+     */
+    private Map<Long, NoteResponseModel> loadByIds(Iterable<? extends Long> ids) {
+        List<Long> missing = new ArrayList<>();
+        ids.forEach(missing::add);
+        return noteRepository.findAllById(missing).stream()
+                .filter(note -> !note.isDeleted())
+                .collect(Collectors.toMap(Note::getId, this::toResponseModel));
+    }
+
+    /**
+     * Loads note of given id from database - used when it is not in NoteCache
+     */
+    private NoteResponseModel loadById(Long id) {
         Optional<Note> byId = noteRepository.findById(id);
         if (byId.isPresent() && !byId.get().isDeleted()) {
-            Note found = byId.get();
-            return new NoteResponseModel(
-                    found.getId(),
-                    found.getTitle(),
-                    found.getRecentVersion().getContent(),
-                    found.getFirstVersion().getDateTime(),
-                    found.getRecentVersion().getDateTime()
-            );
+            return toResponseModel(byId.get());
         } else {
             throw new NoteNotFoundException();
         }
     }
+
+    /**
+     * Version identifier of the most recent version of note of given id, e.g. for checking whether
+     * client has the current version. Content of note is not loaded - it is taken from NoteCache
+     * or read from database as single column.
+     *
+     * @param id id of indicated Note
+     * @return version identifier of the most recent version
+     * @throws NoteNotFoundException when note of given id does not exist or has "deleted" set to true
+     */
+    public int getVersionById(Long id) {
+        NoteResponseModel cached = noteCache.peekById(id);
+        if (cached != null)
+            return cached.getVersion();
+        return noteRepository.findRecentVersionNumberById(id).orElseThrow(NoteNotFoundException::new);
+    }
+
+    /**
+     * Key of the most recent version of note of given title - its id is not known to the caller,
+     * so it is read together with version identifier. See {@link #getVersionById(Long)}
+     *
+     * @param title title of indicated Note
+     * @return id of note and version identifier of its most recent version
+     * @throws NoteNotFoundException when note of given title does not exist or has "deleted" set to true
+     */
+    public NoteVersionKey getVersionKeyByTitle(String title) {
+        NoteResponseModel cached = noteCache.peekByTitle(title);
+        if (cached != null)
+            return new NoteVersionKey(cached.getId(), cached.getVersion());
+        return noteRepository.findRecentVersionKeyByTitle(title).orElseThrow(NoteNotFoundException::new);
+    }
+
+    /**
+     * Page of version history of note, newest versions first. Contents of versions are not loaded,
+     * neither is Note.noteVersions collection. History of deleted note is still available.
+     *
+     * @param id            id of indicated Note
+     * @param beforeVersion only versions older than this one are returned, Integer.MAX_VALUE for the first page
+     * @param limit         maximal number of versions
+     * @return versions ordered by version identifier descending
+     * @throws NoteNotFoundException when note of given id does not exist
+     */
+    public List<NoteVersionModel> getHistory(Long id, int beforeVersion, int limit) {
+        List<NoteVersionModel> history = noteVersionRepository.findHistory(id, beforeVersion, PageRequest.of(0, limit));
+        if (history.isEmpty() && !noteRepository.existsById(id))
+            throw new NoteNotFoundException();
+        return history;
+    }
+
+    /**
+     * Note as it was in given version - content, modification time and version identifier are taken
+     * from that version. Only this version (and its base snapshot) is read.
+     *
+     * @param id      id of indicated Note
+     * @param version version identifier
+     * @return NoteResponseModel of Note in given version
+     * @throws NoteNotFoundException when note of given id does not exist or has no such version
+     */
+    public NoteResponseModel getAtVersion(Long id, int version) {
+        return noteVersionRepository.findByNoteIdAndVersion(id, version)
+                .map(NoteService::toResponseModel)
+                .orElseThrow(NoteNotFoundException::new);
+    }
+
+    /**
+     * Note as it was at given time - in the newest version created not later than that.
+     *
+     * @param id       id of indicated Note
+     * @param dateTime point in time
+     * @return NoteResponseModel of Note in version current at given time
+     * @throws NoteNotFoundException when note of given id does not exist or has not existed yet at given time
+     */
+    public NoteResponseModel getAtTime(Long id, LocalDateTime dateTime) {
+        return noteVersionRepository.findFirstByNoteIdAndDateTimeLessThanEqualOrderByDateTimeDescVersionDesc(id, dateTime)
+                .map(NoteService::toResponseModel)
+                .orElseThrow(NoteNotFoundException::new);
+    }
+
+    /**
+     * Appends NoteChange to change log and publishes NoteChangedEvent with current state of given Note
+     *
+     * @param type    what has happened to the Note
+     * @param note    changed Note
+     * @param version version created by the change, null for deletion
+     */
+    private void recordChange(NoteChange.Type type, Note note, NoteVersion version) {
+        NoteChange change = noteChangeLog.append(new NoteChange(type, note, version, version == null ? LocalDateTime.now() : version.getDateTime()));
+        eventPublisher.publishEvent(new NoteChangedEvent(
+                NoteChangedEvent.Type.valueOf(type.name()),
+                note.getId(),
+                note.getTitle(),
+                note.getRecentContent(),
+                note.getRecentVersionNumber(),
+                change.getId()
+        ));
+    }
+
+    /**
+     * Maps Note as it was in given version into NoteResponseModel - content, modification time
+     * and version identifier are taken from the version.
+     *
+     * @param version given version, with its Note
+     * @return NoteResponseModel of Note in given version
+     */
+    private static NoteResponseModel toResponseModel(NoteVersion version) {
+        Note note = version.getNote();
+        return new NoteResponseModel(
+                note.getId(),
+                note.getTitle(),
+                version.getContent(),
+                note.getCreated(),
+                version.getDateTime(),
+                version.getVersion()
+        );
+    }
+
+    /**
+     * Maps Note into NoteResponseModel. Uses only "recent" fields of Note, so no NoteVersion is loaded.
+     *
+     * @param note given note
+     * @return NoteResponseModel of Note
+     */
+    private NoteResponseModel toResponseModel(Note note) {
+        return new NoteResponseModel(
+                note.getId(),
+                note.getTitle(),
+                note.getRecentContent(),
+                note.getCreated(),
+                note.getModified(),
+                note.getRecentVersionNumber()
+        );
+    }
 }
@@ -0,0 +1,153 @@
+package pl.adambaranowski.notesapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteTitleModel;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted in-memory index of titles of not-deleted notes, used for title autocompletion.
+ * <p>
+ * Titles are kept in skip list ordered case-insensitively, so notes of given prefix are
+ * neighbours and lookup costs O(log n + limit) - it never visits more than limit entries.
+ * Index is rebuilt from database on application start and then updated by {@link NoteChangedEvent}s
+ * after every committed creation or deletion of Note (title of Note never changes).
+ *
+ * @author Adam Baranowski
+ */
+@Service
+public class NoteTitleIndex {
+
+    /**
+     * Separates lowercase title from original title in key, it sorts before any other character,
+     * so "abc" comes before "abcd" and titles differing only by case get different keys
+     */
+    private static final char KEY_SEPARATOR = '\0';
+
+    /**
+     * How long deleted note is remembered - long enough for changes committed before deletion to be delivered
+     */
+    private static final Duration TOMBSTONE_TTL = Duration.ofMinutes(1);
+
+    private NoteRepository noteRepository;
+
+    /**
+     * Number of notes read from database at once when index is rebuilt
+     */
+    private int rebuildPageSize;
+
+    /**
+     * lowercase title + separator + title -> id and title of note
+     */
+    private final ConcurrentSkipListMap<String, NoteTitleModel> titles = new ConcurrentSkipListMap<>();
+
+    /**
+     * id of not-deleted note -> version number of the last applied change, used to ignore changes delivered out of order
+     */
+    private final ConcurrentHashMap<Long, Integer> appliedVersions = new ConcurrentHashMap<>();
+
+    /**
+     * id of recently deleted note -> version number of its deletion, expires after TOMBSTONE_TTL
+     */
+    private final Cache<Long, Integer> deletedVersions = Caffeine.newBuilder().expireAfterWrite(TOMBSTONE_TTL).build();
+
+    @Autowired
+    public NoteTitleIndex(NoteRepository noteRepository,
+                          @Value("${notes.search.rebuild-page-size:500}") int rebuildPageSize) {
+        this.noteRepository = noteRepository;
+        this.rebuildPageSize = rebuildPageSize;
+    }
+
+    /**
+     * Finds titles of not-deleted notes starting with given prefix (case-insensitive).
+     *
+     * @param prefix beginning of title, empty prefix matches all titles
+     * @param limit maximal number of returned titles
+     * @return titles ordered alphabetically (case-insensitive)
+     */
+    public List<NoteTitleModel> findByPrefix(String prefix, int limit) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        List<NoteTitleModel> found = new ArrayList<>(Math.min(limit, 16));
+        for (Map.Entry<String, NoteTitleModel> entry : titles.tailMap(lowerPrefix).entrySet()) {
+            if (found.size() == limit || !entry.getKey().startsWith(lowerPrefix))
+                break;
+            found.add(entry.getValue());
+        }
+        return found;
+    }
+
+    /**
+     * Updates index after committed change of Note
+     *
+     * @param event change of Note
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNoteChanged(NoteChangedEvent event) {
+        boolean deleted = event.getType() == NoteChangedEvent.Type.DELETED;
+        index(event.getNoteId(), event.getTitle(), event.getVersionNumber(), deleted);
+    }
+
+    /**
+     * Builds index from all not-deleted notes in database. Notes are read page by page.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long lastId = 0;
+        List<Note> page;
+        do {
+            page = noteRepository.findByDeletedFalseAndIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, rebuildPageSize));
+            for (Note note : page) {
+                index(note.getId(), note.getTitle(), note.getRecentVersionNumber(), false);
+                lastId = note.getId();
+            }
+        } while (page.size() == rebuildPageSize);
+    }
+
+    /**
+     * @return number of indexed (not-deleted) notes
+     */
+    int getIndexedNoteCount() {
+        return appliedVersions.size();
+    }
+
+    /**
+     * Adds or removes title of note. Changes of the same note are applied one at a time
+     * and change older than already applied one is ignored (deletion wins over change of the same version).
+     * Deleted note is kept only as short-lived tombstone, so the index does not grow with deleted notes.
+     */
+    private void index(Long id, String title, int versionNumber, boolean deleted) {
+        appliedVersions.compute(id, (noteId, applied) -> {
+            if (applied != null && (applied > versionNumber || (applied == versionNumber && !deleted)))
+                return applied;
+            Integer deletedVersion = deletedVersions.getIfPresent(noteId);
+            if (applied == null && deletedVersion != null && deletedVersion >= versionNumber)
+                return null;
+
+            String key = title.toLowerCase(Locale.ROOT) + KEY_SEPARATOR + title;
+            if (deleted) {
+                titles.remove(key);
+                deletedVersions.put(noteId, versionNumber);
+                return null;
+            }
+            deletedVersions.invalidate(noteId);
+            titles.put(key, new NoteTitleModel(noteId, title));
+            return versionNumber;
+        });
+    }
+}
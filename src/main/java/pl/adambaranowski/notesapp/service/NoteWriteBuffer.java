@@ -0,0 +1,330 @@
+package pl.adambaranowski.notesapp.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pl.adambaranowski.notesapp.exception.NoteNotFoundException;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.model.NoteResponseModel;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-behind buffer of note modifications ("notes.write-behind.enabled"), for editors which autosave
+ * every few seconds.
+ * <p>
+ * Modification is only put into memory - edits of the same Note waiting in buffer are collapsed into one, so Note
+ * gets one new NoteVersion instead of one per autosave. Edits are kept and written by id of Note, so edit of deleted
+ * Note is never applied to Note created again under the same title. Buffer is flushed to database in one transaction
+ * ({@link NoteService#modifyNotes(Map)}) every "notes.write-behind.flush-interval-ms", when it holds
+ * "notes.write-behind.max-notes" notes or when any Note has collected "notes.write-behind.max-collapsed-versions" edits.
+ * The last one is durability knob - it bounds how many edits are collapsed into one version
+ * (1 means that every edit becomes its own version, only written asynchronously).
+ * Edit which cannot be written stays in buffer and is retried by next flush, after
+ * "notes.write-behind.max-flush-attempts" failed flushes it is dropped and logged.
+ * <p>
+ * Reads of single Note see buffered content ({@link #overlay(NoteResponseModel)}), so editing client always reads
+ * its own writes. Lists, search, archive and events see edits after flush. Edits waiting in buffer are lost when
+ * application crashes - they are flushed on regular shutdown.
+ *
+ * @author Adam Baranowski
+ */
+@Component
+public class NoteWriteBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(NoteWriteBuffer.class);
+
+    /**
+     * Maximal number of notes modified in one transaction
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    /**
+     * How long deletion of Note is remembered - it has to outlive requests which have read the Note before deletion
+     */
+    private static final Duration DELETION_TTL = Duration.ofMinutes(1);
+
+    private NoteService noteService;
+
+    private boolean enabled;
+
+    private int maxNotes;
+
+    private int maxCollapsedVersions;
+
+    private int maxFlushAttempts;
+
+    /**
+     * note id -> collapsed edits waiting for flush
+     */
+    private final ConcurrentHashMap<Long, PendingEdit> pending = new ConcurrentHashMap<>();
+
+    /**
+     * note id -> edits being flushed right now, still visible to reads until they are committed
+     */
+    private final ConcurrentHashMap<Long, PendingEdit> flushing = new ConcurrentHashMap<>();
+
+    /**
+     * id of recently deleted note -> version number of Note when it was deleted
+     */
+    private final Cache<Long, Integer> deletedVersions = Caffeine.newBuilder().expireAfterWrite(DELETION_TTL).build();
+
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public NoteWriteBuffer(NoteService noteService,
+                           @Value("${notes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${notes.write-behind.flush-interval-ms:2000}") long flushIntervalMs,
+                           @Value("${notes.write-behind.max-notes:1000}") int maxNotes,
+                           @Value("${notes.write-behind.max-collapsed-versions:20}") int maxCollapsedVersions,
+                           @Value("${notes.write-behind.max-flush-attempts:5}") int maxFlushAttempts) {
+        this.noteService = noteService;
+        this.enabled = enabled;
+        this.maxNotes = maxNotes;
+        this.maxCollapsedVersions = maxCollapsedVersions;
+        this.maxFlushAttempts = maxFlushAttempts;
+        if (enabled) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("note-write-behind-"));
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return true when modifications should go through this buffer
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffers modification of Note. When buffer is full, caller flushes it first (backpressure),
+     * failure of that flush does not fail the modification.
+     *
+     * @param noteRequestModel title and new content
+     * @throws NoteNotFoundException when note of given title does not exist or has "deleted" set to true
+     * @throws IllegalStateException when buffer is not enabled
+     */
+    public void modify(NoteRequestModel noteRequestModel) {
+        if (!enabled)
+            throw new IllegalStateException("Write-behind is not enabled");
+        NoteResponseModel note = noteService.getByTitle(noteRequestModel.getTitle());
+        Long id = note.getId();
+        if (pending.size() >= maxNotes && !pending.containsKey(id))
+            flush();
+
+        LocalDateTime now = LocalDateTime.now();
+        //deletion is checked atomically with buffering, so Note deleted after it has been read is never edited
+        PendingEdit edit = pending.compute(id, (noteId, waiting) -> {
+            if (isDeletedSince(noteId, note.getVersion()))
+                return waiting;
+            return waiting == null
+                    ? new PendingEdit(note.getVersion(), noteRequestModel.getContent(), now, 1, 0)
+                    : new PendingEdit(waiting.version, noteRequestModel.getContent(), now, waiting.edits + 1, waiting.failedFlushes);
+        });
+        if (isDeletedSince(id, note.getVersion()))
+            throw new NoteNotFoundException();
+        if (edit.edits >= maxCollapsedVersions || pending.size() >= maxNotes)
+            flusher.execute(this::flushQuietly);
+    }
+
+    /**
+     * Applies buffered edit of Note to model read from database
+     *
+     * @param note Note read by NoteService
+     * @return the same model when Note has no buffered edit, otherwise copy with buffered content and modification time
+     */
+    public NoteResponseModel overlay(NoteResponseModel note) {
+        PendingEdit edit = find(note.getId());
+        if (edit == null)
+            return note;
+        return new NoteResponseModel(note.getId(), note.getTitle(), edit.content, note.getCreated(), edit.modified, note.getVersion());
+    }
+
+    /**
+     * @param id id of Note
+     * @return true when Note has edit which is not committed yet
+     */
+    public boolean hasPendingEdit(Long id) {
+        return find(id) != null;
+    }
+
+    /**
+     * Writes all buffered edits to database. Flushes never run concurrently, so edits of the same Note
+     * are committed in order. Edits which cannot be written are put back to buffer (or dropped after
+     * maxFlushAttempts failed flushes) - flush itself does not fail.
+     *
+     * @return number of modified notes
+     */
+    public synchronized int flush() {
+        int modified = 0;
+        Map<Long, String> batch = new LinkedHashMap<>();
+        Iterator<Long> ids = pending.keySet().iterator();
+        while (ids.hasNext()) {
+            Long id = ids.next();
+            PendingEdit edit = pending.get(id);
+            if (edit == null)
+                continue;
+            if (isDeletedSince(id, edit.version)) {
+                //failed edit put back to buffer while its Note was being deleted
+                pending.remove(id, edit);
+                continue;
+            }
+            //edit is put into flushing before it leaves pending, so reads always see it in one of them
+            flushing.put(id, edit);
+            if (!pending.remove(id, edit)) {
+                //newer edit has been collapsed with it in the meantime - it is written by next flush
+                flushing.remove(id, edit);
+                continue;
+            }
+            batch.put(id, edit.content);
+            if (batch.size() == FLUSH_BATCH_SIZE || !ids.hasNext()) {
+                modified += write(batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty())
+            modified += write(batch);
+        return modified;
+    }
+
+    /**
+     * Drops buffered and flushed edits of deleted Note, so they are not applied when Note is created again
+     *
+     * @param event change of Note
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNoteChanged(NoteChangedEvent event) {
+        if (event.getType() != NoteChangedEvent.Type.DELETED)
+            return;
+        //remembered before edits are dropped, so modify() either sees the deletion or its edit is dropped here
+        deletedVersions.put(event.getNoteId(), event.getVersionNumber());
+        pending.remove(event.getNoteId());
+        flushing.remove(event.getNoteId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null)
+            flusher.shutdown();
+        flushQuietly();
+    }
+
+    /**
+     * Writes batch of edits, which are all in flushing. When batch fails, its edits are written one by one,
+     * so that edit which cannot be written does not hold back the others.
+     */
+    private int write(Map<Long, String> batch) {
+        try {
+            return noteService.modifyNotes(batch);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                flushing.forEach((id, edit) -> retryLater(id, edit, e));
+                return 0;
+            }
+            int modified = 0;
+            for (Map.Entry<Long, PendingEdit> entry : flushing.entrySet()) {
+                PendingEdit edit = entry.getValue();
+                try {
+                    modified += noteService.modifyNotes(Map.of(entry.getKey(), edit.content));
+                } catch (RuntimeException single) {
+                    retryLater(entry.getKey(), edit, single);
+                }
+            }
+            return modified;
+        } finally {
+            flushing.clear();
+        }
+    }
+
+    /**
+     * Puts failed edit back to buffer, unless it has failed maxFlushAttempts times. Newer edit of the same Note
+     * already waiting in buffer replaces it, but inherits its failed flushes - Note which cannot be written
+     * is given up even when it keeps being edited.
+     */
+    private void retryLater(Long id, PendingEdit failed, RuntimeException e) {
+        int failedFlushes = failed.failedFlushes + 1;
+        if (failedFlushes >= maxFlushAttempts) {
+            log.warn("Buffered edit of note {} dropped after {} failed flushes", id, failedFlushes, e);
+            return;
+        }
+        log.debug("Flush of buffered edit of note {} failed, it will be retried", id, e);
+        pending.merge(id, new PendingEdit(failed.version, failed.content, failed.modified, failed.edits, failedFlushes),
+                (newer, retried) -> new PendingEdit(retried.version, newer.content, newer.modified,
+                        newer.edits + retried.edits, failedFlushes));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Flush of buffered note edits failed, it will be retried", e);
+        }
+    }
+
+    /**
+     * @return true when Note has been deleted after it was read in given version
+     */
+    private boolean isDeletedSince(Long id, int version) {
+        Integer deletedVersion = deletedVersions.getIfPresent(id);
+        return deletedVersion != null && deletedVersion >= version;
+    }
+
+    private PendingEdit find(Long id) {
+        PendingEdit edit = pending.get(id);
+        return edit != null ? edit : flushing.get(id);
+    }
+
+    /**
+     * Collapsed edits of single Note
+     */
+    private static class PendingEdit {
+
+        /**
+         * Version of Note which the first of collapsed edits has been made to
+         */
+        private final int version;
+
+        /**
+         * Content of the latest edit
+         */
+        private final String content;
+
+        /**
+         * Time of the latest edit
+         */
+        private final LocalDateTime modified;
+
+        /**
+         * Number of collapsed edits
+         */
+        private final int edits;
+
+        /**
+         * Number of flushes which failed to write it
+         */
+        private final int failedFlushes;
+
+        PendingEdit(int version, String content, LocalDateTime modified, int edits, int failedFlushes) {
+            this.version = version;
+            this.content = content;
+            this.modified = modified;
+            this.edits = edits;
+            this.failedFlushes = failedFlushes;
+        }
+    }
+}
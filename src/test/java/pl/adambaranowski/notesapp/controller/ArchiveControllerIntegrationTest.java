@@ -0,0 +1,271 @@
+package pl.adambaranowski.notesapp.controller;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.service.ArchiveService;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class,
+        properties = {
+                "archive.export.page-size=2",
+                "archive.export.parallelism=4"
+        }
+)
+@AutoConfigureMockMvc
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class ArchiveControllerIntegrationTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ArchiveService archiveService;
+
+    @Autowired
+    NoteRepository noteRepository;
+
+    @Autowired
+    NoteChangeRepository noteChangeRepository;
+
+    @BeforeEach
+    void cleanRepository() {
+        noteChangeRepository.deleteAll();
+        noteRepository.deleteAll();
+    }
+
+    @Test
+    void getAllShouldStreamAllVersionsOfAllNotesAcrossPages() throws Exception {
+        // given - more notes than fits in one page
+        for (int i = 0; i < 5; i++) {
+            noteService.createNewNote(new NoteRequestModel("archived " + i, "first version"));
+        }
+        noteService.modifyNote(new NoteRequestModel("archived 0", "second version"));
+        noteService.removeNoteByTitle("archived 4");
+
+        // when
+        String response = getArchive();
+
+        // then
+        JSONArray archive = new JSONArray(response);
+        assertThat(archive.length(), equalTo(5));
+        JSONObject first = archive.getJSONObject(0);
+        assertThat(first.getString("title"), equalTo("archived 0"));
+        assertThat(first.getJSONArray("versions").length(), equalTo(2));
+        assertThat(first.getJSONArray("versions").getJSONObject(1).getString("content"), equalTo("second version"));
+        assertThat(archive.getJSONObject(4).getString("title"), equalTo("archived 4"));
+    }
+
+    @Test
+    void getAllShouldCountStatementsOfExportThreadsInItsRequest() throws Exception {
+        // given - notes of three chunks
+        for (int i = 0; i < 5; i++) {
+            noteService.createNewNote(new NoteRequestModel("counted " + i, "content"));
+        }
+
+        // when
+        MvcResult result = mvc.perform(get("/archive/getall"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        // then - every chunk reads its notes and their versions
+        DistributionSummary statements = meterRegistry.get("notes.request.statements")
+                .tag("uri", "/archive/getall").summary();
+        assertThat(statements.max(), greaterThanOrEqualTo(6.0));
+    }
+
+    @Test
+    void getAllShouldNotMakeEmptyChunksOfGapsInIds() throws Exception {
+        // given - cost of archive of four notes with consecutive ids
+        List<Note> dense = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            dense.add(createNote("dense " + i));
+        }
+        getArchive();
+        DistributionSummary statements = meterRegistry.get("notes.request.statements")
+                .tag("uri", "/archive/getall").summary();
+        double before = statements.totalAmount();
+        getArchive();
+        double denseStatements = statements.totalAmount() - before;
+        noteRepository.deleteAll(dense);
+
+        // and - four notes separated by gap of purged notes
+        List<Note> purged = new ArrayList<>();
+        createNote("sparse 0");
+        createNote("sparse 1");
+        for (int i = 0; i < 20; i++) {
+            purged.add(createNote("purged " + i));
+        }
+        createNote("sparse 2");
+        createNote("sparse 3");
+        noteRepository.deleteAll(purged);
+
+        // when
+        before = statements.totalAmount();
+        JSONArray archive = new JSONArray(getArchive());
+
+        // then
+        assertThat(archive.length(), equalTo(4));
+        assertThat(archive.getJSONObject(3).getString("title"), equalTo("sparse 3"));
+        assertThat(statements.totalAmount() - before, equalTo(denseStatements));
+    }
+
+    @Test
+    void getAllShouldReturnEmptyArchiveWhenThereIsNoNote() throws Exception {
+        assertThat(getArchive(), equalTo("[]"));
+    }
+
+    @Test
+    void getAllShouldReturnCompleteArchiveForEveryConcurrentRequest() throws Exception {
+        // given
+        for (int i = 0; i < 20; i++) {
+            noteService.createNewNote(new NoteRequestModel("concurrent " + i, "content of note " + i));
+            for (int v = 2; v <= 3; v++) {
+                noteService.modifyNote(new NoteRequestModel("concurrent " + i, "version " + v + " of note " + i));
+            }
+        }
+        String expected = archiveService.getAllVersionsOfAllNotes();
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<String>> responses = new ArrayList<>();
+        try {
+            Callable<String> archiveRequest = this::getArchive;
+            for (int i = 0; i < 200; i++) {
+                responses.add(executor.submit(archiveRequest));
+            }
+
+            // then
+            for (Future<String> response : responses) {
+                String archive = response.get();
+                assertThat(new JSONArray(archive).length(), equalTo(20));
+                assertThat(archive, equalTo(expected));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void addedNoteAndArchiveShouldBeValidJsonForSpecialCharacters() throws Exception {
+        // given
+        String title = "\"quoted\" \\ title";
+        String content = "first line\nsecond \"line\"\t\\ \u0001 zażółć";
+        JSONObject request = new JSONObject();
+        request.put("title", title);
+        request.put("content", content);
+        noteRepository.save(new Note("note without versions"));
+
+        // when
+        JSONObject created = new JSONObject(mvc.perform(post("/notes")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(request.toString()))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8));
+        JSONArray archive = new JSONArray(getArchive());
+
+        // then
+        assertThat(created.getString("title"), equalTo(title));
+        assertThat(created.getString("content"), equalTo(content));
+        assertThat(archive.length(), equalTo(2));
+        assertThat(archive.getJSONObject(0).getString("title"), equalTo("note without versions"));
+        assertThat(archive.getJSONObject(0).getJSONArray("versions").length(), equalTo(0));
+        assertThat(archive.getJSONObject(1).getLong("id"), equalTo(created.getLong("id")));
+        assertThat(archive.getJSONObject(1).getString("title"), equalTo(title));
+        assertThat(archive.getJSONObject(1).getJSONArray("versions").getJSONObject(0).getString("content"), equalTo(content));
+    }
+
+    @Test
+    void getChangesShouldReturnOnlyChangesAfterCursor() throws Exception {
+        // given
+        noteService.createNewNote(new NoteRequestModel("synced", "first version"));
+        JSONObject firstSync = new JSONObject(mvc.perform(get("/archive/changes"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        long cursor = firstSync.getLong("cursor");
+
+        noteService.modifyNote(new NoteRequestModel("synced", "second version"));
+        noteService.removeNoteByTitle("synced");
+
+        // when
+        JSONObject secondSync = new JSONObject(mvc.perform(get("/archive/changes").param("after", String.valueOf(cursor)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        JSONObject thirdSync = new JSONObject(mvc.perform(get("/archive/changes").param("after", String.valueOf(secondSync.getLong("cursor"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        // then
+        assertThat(firstSync.getJSONArray("changes").length(), equalTo(1));
+        assertThat(firstSync.getJSONArray("changes").getJSONObject(0).getString("type"), equalTo("CREATED"));
+        JSONArray changes = secondSync.getJSONArray("changes");
+        assertThat(changes.length(), equalTo(2));
+        assertThat(changes.getJSONObject(0).getString("type"), equalTo("MODIFIED"));
+        assertThat(changes.getJSONObject(0).getInt("version"), equalTo(2));
+        assertThat(changes.getJSONObject(0).getString("content"), equalTo("second version"));
+        assertThat(changes.getJSONObject(1).getString("type"), equalTo("DELETED"));
+        assertThat(thirdSync.getJSONArray("changes").length(), equalTo(0));
+        assertThat(thirdSync.getLong("cursor"), equalTo(secondSync.getLong("cursor")));
+    }
+
+    private Note createNote(String title) {
+        return noteRepository.save(new Note(title));
+    }
+
+    private String getArchive() throws Exception {
+        MvcResult asyncResult = mvc.perform(get("/archive/getall"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mvc.perform(asyncDispatch(asyncResult))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+    }
+}
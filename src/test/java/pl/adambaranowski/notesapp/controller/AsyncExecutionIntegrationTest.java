@@ -0,0 +1,143 @@
+package pl.adambaranowski.notesapp.controller;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class,
+        properties = {
+                "notes.execution.mode=async",
+                "notes.page.default-size=1",
+                //own database - closing this context drops its schema, which must not affect cached contexts
+                "spring.datasource.url=jdbc:h2:mem:async-execution"
+        }
+)
+@AutoConfigureMockMvc
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class AsyncExecutionIntegrationTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    NoteRepository noteRepository;
+
+    @Autowired
+    NoteChangeRepository noteChangeRepository;
+
+    @BeforeEach
+    void clearDatabase() {
+        noteChangeRepository.deleteAll();
+        noteRepository.deleteAll();
+    }
+
+    @Test
+    void addNoteShouldBeHandledAsynchronously() throws Exception {
+        JSONObject newJNote = new JSONObject();
+        newJNote.put("title", "async title");
+        newJNote.put("content", "async content");
+
+        mvc.perform(dispatch(post("/notes")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(newJNote.toString())))
+                .andExpect(status().isCreated())
+                .andExpect(content().string(containsString("\"title\":\"async title\"")));
+    }
+
+    @Test
+    void addNoteShouldReportValidationErrorsOfArgumentsResolvedBeforeHandOver() throws Exception {
+        JSONObject newJNote = new JSONObject();
+        newJNote.put("title", "");
+        newJNote.put("content", "async content");
+
+        mvc.perform(dispatch(post("/notes")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(newJNote.toString())))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void getByTitleShouldReturnNotFoundStatusForMissingNote() throws Exception {
+        mvc.perform(dispatch(get("/notes/title").param("title", "missing")))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getAllNotesShouldSendLinkToNextPage() throws Exception {
+        noteService.createNewNote(new NoteRequestModel("first", "content"));
+        noteService.createNewNote(new NoteRequestModel("second", "content"));
+
+        mvc.perform(dispatch(get("/notes/getall").param("limit", "1")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"title\":\"first\"")))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("limit=1")));
+    }
+
+    @Test
+    void getAllNotesWithoutPagingParamsShouldReturnAllNotes() throws Exception {
+        noteService.createNewNote(new NoteRequestModel("first", "content"));
+        noteService.createNewNote(new NoteRequestModel("second", "content"));
+
+        mvc.perform(dispatch(get("/notes/getall")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"title\":\"second\"")))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+        mvc.perform(dispatch(get("/notes/getall").param("after", "0")))
+                .andExpect(status().isOk())
+                .andExpect(content().string(not(containsString("\"title\":\"second\""))))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("limit=1")));
+    }
+
+    @Test
+    void getByIdShouldReturnNotModifiedForCurrentETag() throws Exception {
+        Long id = noteService.createNewNote(new NoteRequestModel("polled", "content")).getId();
+
+        mvc.perform(dispatch(get("/notes/" + id).header(HttpHeaders.IF_NONE_MATCH, "\"" + id + "-1\"")))
+                .andExpect(status().isNotModified());
+    }
+
+    /**
+     * Performs request, checks that it has been handed over to worker thread and dispatches its result
+     */
+    private RequestBuilder dispatch(RequestBuilder requestBuilder) throws Exception {
+        MvcResult result = mvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return asyncDispatch(result);
+    }
+}
@@ -0,0 +1,138 @@
+package pl.adambaranowski.notesapp.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class,
+        properties = {
+                "archive.export.page-size=1",
+                "archive.export.parallelism=2"
+        }
+)
+@AutoConfigureMockMvc
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class CborIntegrationTest {
+
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    NoteRepository noteRepository;
+
+    @Autowired
+    NoteChangeRepository noteChangeRepository;
+
+    @BeforeEach
+    void clearDatabase() {
+        noteChangeRepository.deleteAll();
+        noteRepository.deleteAll();
+    }
+
+    @Test
+    void getByIdShouldReturnCborWhenClientAcceptsIt() throws Exception {
+        // given
+        Long id = noteService.createNewNote(new NoteRequestModel("binary", "content with \"quotes\"")).getId();
+
+        // when
+        byte[] response = mvc.perform(get("/notes/" + id).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // then - the same fields as in JSON, dates as ISO strings
+        JsonNode note = cborMapper.readTree(response);
+        assertThat(note.get("id").asLong(), equalTo(id));
+        assertThat(note.get("content").asText(), equalTo("content with \"quotes\""));
+        assertThat(note.get("created").isTextual(), equalTo(true));
+        mvc.perform(get("/notes/" + id))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void archiveShouldBeStreamedAsCborWhenClientAcceptsIt() throws Exception {
+        // given
+        for (int i = 0; i < 3; i++) {
+            noteService.createNewNote(new NoteRequestModel("archived " + i, "first version"));
+        }
+        noteService.modifyNote(new NoteRequestModel("archived 2", "second version"));
+
+        // when
+        MvcResult asyncResult = mvc.perform(get("/archive/getall").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] response = mvc.perform(asyncDispatch(asyncResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // then
+        JsonNode archive = cborMapper.readTree(response);
+        assertThat(archive.size(), equalTo(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(archive.get(i).get("title").asText(), equalTo("archived " + i));
+        }
+        assertThat(archive.get(2).get("versions").get(1).get("content").asText(), equalTo("second version"));
+    }
+
+    @Test
+    void archiveShouldHaveOtherETagThanJsonArchive() throws Exception {
+        // given
+        noteService.createNewNote(new NoteRequestModel("archived", "first version"));
+        String jsonETag = mvc.perform(get("/archive/getall"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // when
+        MvcResult asyncResult = mvc.perform(get("/archive/getall").accept(MediaType.APPLICATION_CBOR)
+                .header(HttpHeaders.IF_NONE_MATCH, jsonETag))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        String cborETag = asyncResult.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(cborETag, not(equalTo(jsonETag)));
+        mvc.perform(get("/archive/getall").accept(MediaType.APPLICATION_CBOR).header(HttpHeaders.IF_NONE_MATCH, cborETag))
+                .andExpect(status().isNotModified());
+    }
+}
@@ -0,0 +1,161 @@
+package pl.adambaranowski.notesapp.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class
+)
+@AutoConfigureMockMvc
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class ConditionalRequestIntegrationTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    NoteRepository noteRepository;
+
+    @Autowired
+    NoteChangeRepository noteChangeRepository;
+
+    @BeforeEach
+    void clearDatabase() {
+        noteChangeRepository.deleteAll();
+        noteRepository.deleteAll();
+    }
+
+    @Test
+    void getByIdShouldReturnNotModifiedUntilNoteIsModified() throws Exception {
+        Long id = noteService.createNewNote(new NoteRequestModel("polled", "first version")).getId();
+
+        mvc.perform(get("/notes/" + id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""));
+        mvc.perform(get("/notes/" + id).header(HttpHeaders.IF_NONE_MATCH, "\"" + id + "-1\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        noteService.modifyNote(new NoteRequestModel("polled", "second version"));
+
+        mvc.perform(get("/notes/title").param("title", "polled").header(HttpHeaders.IF_NONE_MATCH, "\"" + id + "-1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-2\""))
+                .andExpect(content().string(containsString("second version")));
+    }
+
+    @Test
+    void versionsOfNoteShouldBeServedWithTheirETags() throws Exception {
+        Long id = noteService.createNewNote(new NoteRequestModel("audited", "first version")).getId();
+        noteService.modifyNote(new NoteRequestModel("audited", "second version"));
+        noteService.modifyNote(new NoteRequestModel("audited", "third version"));
+
+        mvc.perform(get("/notes/" + id + "/versions").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"version\":3")))
+                .andExpect(content().string(not(containsString("third version"))))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("before=2")));
+        mvc.perform(get("/notes/" + id + "/versions/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""))
+                .andExpect(content().string(containsString("first version")));
+        mvc.perform(get("/notes/" + id + "/versions/at").param("time", "2999-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-3\""));
+        mvc.perform(get("/notes/" + id + "/versions/4"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getByTitleShouldReturnNotFoundForConditionalRequestOfMissingNote() throws Exception {
+        mvc.perform(get("/notes/title").param("title", "missing").header(HttpHeaders.IF_NONE_MATCH, "\"1-1\""))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void modifyNoteShouldRequireCurrentETag() throws Exception {
+        Long id = noteService.createNewNote(new NoteRequestModel("edited", "first version")).getId();
+        String edit = "{\"title\":\"edited\",\"content\":\"second version\"}";
+
+        mvc.perform(put("/notes").contentType(MediaType.APPLICATION_JSON_VALUE).content(edit)
+                .header(HttpHeaders.IF_MATCH, "\"" + id + "-1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-2\""));
+        mvc.perform(put("/notes").contentType(MediaType.APPLICATION_JSON_VALUE).content(edit)
+                .header(HttpHeaders.IF_MATCH, "\"" + id + "-1\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void eTagOfNoteShouldNotMatchOtherNoteOfTheSameTitleAndVersion() throws Exception {
+        // given - the same title and version as note which has been purged
+        Long id = noteService.createNewNote(new NoteRequestModel("recreated", "first version")).getId();
+        String eTagOfPurgedNote = "\"" + (id + 1000) + "-1\"";
+        String edit = "{\"title\":\"recreated\",\"content\":\"second version\"}";
+
+        // when
+        // then
+        mvc.perform(get("/notes/title").param("title", "recreated").header(HttpHeaders.IF_NONE_MATCH, eTagOfPurgedNote))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + id + "-1\""));
+        mvc.perform(put("/notes").contentType(MediaType.APPLICATION_JSON_VALUE).content(edit)
+                .header(HttpHeaders.IF_MATCH, eTagOfPurgedNote))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(put("/notes").contentType(MediaType.APPLICATION_JSON_VALUE).content(edit)
+                .header(HttpHeaders.IF_MATCH, "\"1\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void archiveShouldReturnNotModifiedUntilAnyNoteChanges() throws Exception {
+        noteService.createNewNote(new NoteRequestModel("archived", "first version"));
+        String eTag = archiveETag();
+
+        mvc.perform(get("/archive/getall").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        noteService.removeNoteByTitle("archived");
+
+        String changedETag = archiveETag();
+        assertThat(changedETag, not(eTag));
+    }
+
+    private String archiveETag() throws Exception {
+        MvcResult result = mvc.perform(get("/archive/getall")).andReturn();
+        mvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        return result.getResponse().getHeader(HttpHeaders.ETAG);
+    }
+}
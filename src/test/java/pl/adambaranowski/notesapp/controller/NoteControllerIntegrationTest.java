@@ -13,6 +13,7 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.RequestBuilder;
 import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.metrics.StatementCounter;
 import pl.adambaranowski.notesapp.repository.NoteRepository;
 
 import static org.hamcrest.core.StringContains.containsString;
@@ -41,6 +42,9 @@ class NoteControllerIntegrationTest {
     @Autowired
     NoteRepository noteRepository;
 
+    @Autowired
+    StatementCounter statementCounter;
+
     @Test
     void addNoteShouldReturnOkStatusAndJsonWithId() throws Exception {
 
@@ -56,5 +60,18 @@ class NoteControllerIntegrationTest {
 
     }
 
+    @Test
+    void getAllNotesShouldSendOneStatement() throws Exception {
+
+        try (StatementCounter.Scope statements = statementCounter.startCounting()) {
+            mvc.perform(get("/notes/getall")
+                    .param("limit", "100")).andExpect(
+                            status().isOk()
+            );
+            assertEquals(1, statements.get());
+        }
+
+    }
+
 
 }
\ No newline at end of file
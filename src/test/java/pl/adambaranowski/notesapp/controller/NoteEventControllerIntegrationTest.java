@@ -0,0 +1,70 @@
+package pl.adambaranowski.notesapp.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class
+)
+@AutoConfigureMockMvc
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class NoteEventControllerIntegrationTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    NoteService noteService;
+
+    @Test
+    void subscriberShouldReceiveCommittedChanges() throws Exception {
+        // given
+        MvcResult subscription = mvc.perform(get("/notes/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // when
+        noteService.createNewNote(new NoteRequestModel("pushed", "first version"));
+        noteService.removeNoteByTitle("pushed");
+
+        // then
+        String stream = awaitContent(subscription, "event:deleted");
+        assertThat(stream, containsString("event:created"));
+        assertThat(stream, containsString("\"title\":\"pushed\""));
+        assertThat(stream, not(containsString("\nid:")));
+    }
+
+    /**
+     * Events are sent by dispatcher thread, so they reach the response a moment after commit
+     */
+    private static String awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = result.getResponse().getContentAsString();
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            content = result.getResponse().getContentAsString();
+        }
+        return content;
+    }
+}
@@ -0,0 +1,125 @@
+package pl.adambaranowski.notesapp.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.service.NoteService;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class,
+        //metrics are not exported in tests by default
+        properties = "management.metrics.export.prometheus.enabled=true"
+)
+@AutoConfigureMockMvc
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class MetricsIntegrationTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PrometheusMeterRegistry prometheusMeterRegistry;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    NoteRepository noteRepository;
+
+    @Autowired
+    NoteChangeRepository noteChangeRepository;
+
+    @BeforeEach
+    void clearDatabase() {
+        noteChangeRepository.deleteAll();
+        noteRepository.deleteAll();
+    }
+
+    @Test
+    void serviceAndRepositoryCallsShouldBeTimed() {
+        noteService.createNewNote(new NoteRequestModel("timed", "content"));
+
+        assertThat(meterRegistry.get(OperationMetricsAspect.SERVICE_TIMER)
+                .tag("class", "NoteService").tag("method", "createNewNote").timer().count(), greaterThan(0L));
+        assertThat(meterRegistry.get(OperationMetricsAspect.REPOSITORY_TIMER)
+                .tag("class", "NoteRepository").tag("method", "findByTitle").timer().count(), greaterThan(0L));
+        assertThat(prometheusMeterRegistry.scrape(),
+                containsString("notes_service_seconds{class=\"NoteService\",exception=\"none\",method=\"createNewNote\",quantile=\"0.99\",}"));
+        //connection pool wait time
+        assertThat(prometheusMeterRegistry.scrape(), containsString("hikaricp_connections_acquire_seconds{"));
+    }
+
+    @Test
+    void statementsOfRequestShouldBeCounted() throws Exception {
+        Long id = noteService.createNewNote(new NoteRequestModel("counted", "content")).getId();
+        noteService.modifyNote(new NoteRequestModel("counted", "modified content"));
+
+        mvc.perform(get("/notes/" + id + "/versions"))
+                .andExpect(status().isOk());
+
+        DistributionSummary statements = meterRegistry.get("notes.request.statements")
+                .tag("uri", "/notes/{id}/versions").summary();
+        assertThat(statements.count(), greaterThan(0L));
+        assertThat(statements.totalAmount(), greaterThan(0.0));
+    }
+
+    @Test
+    void sizeOfStreamedArchiveShouldBeRecorded() throws Exception {
+        noteService.createNewNote(new NoteRequestModel("archived", "content"));
+
+        MvcResult result = mvc.perform(get("/archive/getall"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        assertThat(meterRegistry.get("notes.archive.bytes").tag("format", "json").summary().totalAmount(),
+                greaterThan((double) "archived".length()));
+    }
+
+    @Test
+    void statementsOfStreamedArchiveShouldBeCountedInItsRequest() throws Exception {
+        noteService.createNewNote(new NoteRequestModel("archived", "content"));
+
+        MvcResult result = mvc.perform(get("/archive/getall"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        DistributionSummary statements = meterRegistry.get("notes.request.statements")
+                .tag("uri", "/archive/getall").summary();
+        assertThat(statements.count(), greaterThan(0L));
+        assertThat(statements.totalAmount(), greaterThan(0.0));
+    }
+}
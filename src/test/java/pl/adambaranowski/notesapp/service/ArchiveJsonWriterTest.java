@@ -0,0 +1,89 @@
+package pl.adambaranowski.notesapp.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ArchiveJsonWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void datesShouldHaveTheSameFormAsLocalDateTimeToString() throws IOException {
+        // given
+        List<LocalDateTime> dates = Arrays.asList(
+                LocalDateTime.of(2020, 10, 6, 19, 51),
+                LocalDateTime.of(2020, 10, 6, 19, 51, 28),
+                LocalDateTime.of(2020, 1, 2, 3, 4, 0, 5_000_000),
+                LocalDateTime.of(2020, 1, 2, 3, 4, 5, 120_000),
+                LocalDateTime.of(2020, 1, 2, 3, 4, 5, 123_456_789),
+                LocalDateTime.of(12020, 1, 2, 3, 4, 5));
+        Note note = note(1L, "dates");
+        List<NoteVersion> versions = new ArrayList<>();
+        for (LocalDateTime date : dates) {
+            versions.add(new NoteVersion(versions.size() + 1, "content", date, note));
+        }
+
+        note.setNoteVersions(versions);
+
+        // when
+        JsonNode archive = write(note);
+
+        // then
+        JsonNode written = archive.get(0).get("versions");
+        for (int i = 0; i < dates.size(); i++) {
+            assertThat(written.get(i).get("date").asText(), equalTo(dates.get(i).toString()));
+        }
+    }
+
+    @Test
+    void titlesAndContentsShouldBeEscaped() throws IOException {
+        // given
+        String title = "\"quoted\" \\ title";
+        String content = "first line\nsecond \"line\"\t\\ \u0001";
+        Note note = note(1L, title);
+        note.setNoteVersions(Collections.singletonList(new NoteVersion(1, content, LocalDateTime.now(), note)));
+        Note withoutVersions = note(2L, "without versions");
+        withoutVersions.setNoteVersions(Collections.emptyList());
+
+        // when
+        JsonNode archive = write(note, withoutVersions);
+
+        // then
+        assertThat(archive.size(), equalTo(2));
+        assertThat(archive.get(0).get("title").asText(), equalTo(title));
+        assertThat(archive.get(0).get("versions").get(0).get("content").asText(), equalTo(content));
+        assertThat(archive.get(1).get("versions").size(), equalTo(0));
+    }
+
+    private JsonNode write(Note... notes) throws IOException {
+        StringWriter out = new StringWriter();
+        try (ArchiveJsonWriter writer = new ArchiveJsonWriter(objectMapper.getFactory().createGenerator(out))) {
+            writer.writeStartArchive();
+            for (Note note : notes) {
+                writer.writeNote(note, note.getNoteVersions());
+            }
+            writer.writeEndArchive();
+        }
+        return objectMapper.readTree(out.toString());
+    }
+
+    private static Note note(Long id, String title) {
+        Note note = new Note(title);
+        note.setId(id);
+        return note;
+    }
+}
@@ -0,0 +1,77 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pl.adambaranowski.notesapp.model.NoteChange;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteChangeLogTest {
+
+    private NoteChangeRepository noteChangeRepository;
+
+    private NoteChangeLog noteChangeLog;
+
+    @BeforeEach
+    void createLog() {
+        noteChangeRepository = mock(NoteChangeRepository.class);
+        AtomicLong sequence = new AtomicLong(10);
+        when(noteChangeRepository.save(any(NoteChange.class))).thenAnswer(invocation -> {
+            NoteChange change = invocation.getArgument(0);
+            change.setId(sequence.incrementAndGet());
+            return change;
+        });
+        when(noteChangeRepository.findMaxId()).thenReturn(10L);
+        noteChangeLog = new NoteChangeLog(noteChangeRepository);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void readShouldNotPassChangeOfNotFinishedTransaction() {
+        // given - change 11 is still in transaction, change 12 has been committed
+        TransactionSynchronizationManager.initSynchronization();
+        noteChangeLog.append(new NoteChange());
+        List<TransactionSynchronization> first = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        noteChangeLog.append(new NoteChange());
+
+        // when
+        noteChangeLog.read(0, 100);
+
+        // then - feed stops right before change 11
+        verify(noteChangeRepository).findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(eq(0L), eq(10L), any(Pageable.class));
+
+        // when - transaction of change 11 finishes
+        first.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        noteChangeLog.read(10, 100);
+
+        // then
+        verify(noteChangeRepository).findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(eq(10L), eq(12L), any(Pageable.class));
+    }
+
+    @Test
+    void readShouldReturnAllStoredChangesWhenNothingIsInFlight() {
+        // when
+        noteChangeLog.read(0, 100);
+
+        // then
+        verify(noteChangeRepository).findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(eq(0L), eq(10L), any(Pageable.class));
+    }
+}
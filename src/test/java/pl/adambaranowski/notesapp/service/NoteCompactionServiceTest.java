@@ -0,0 +1,165 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.model.CompactionReportModel;
+import pl.adambaranowski.notesapp.model.Note;
+import pl.adambaranowski.notesapp.model.NoteChange;
+import pl.adambaranowski.notesapp.model.NoteChangeModel;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.repository.NoteVersionRepository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Every batch of compaction runs in its own transaction, so it is tested against the whole application
+ * (unlike NoteServiceIntegrationTest).
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class,
+        properties = {
+                "notes.compaction.keep-last-versions=3",
+                "notes.compaction.daily-after-days=30",
+                "notes.compaction.tombstone-days=90",
+                "notes.compaction.batch-size=2"
+        }
+)
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class NoteCompactionServiceTest {
+
+    @Autowired
+    NoteCompactionService noteCompactionService;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    ArchiveService archiveService;
+
+    @Autowired
+    NoteRepository noteRepository;
+
+    @Autowired
+    NoteVersionRepository noteVersionRepository;
+
+    @Autowired
+    NoteChangeRepository noteChangeRepository;
+
+    @BeforeEach
+    void clearDatabase() {
+        noteChangeRepository.deleteAll();
+        noteRepository.deleteAll();
+    }
+
+    @Test
+    void compactShouldKeepRecentAndDailyVersionsAndRebaseDeltas() {
+        // given - versions 1-4 are 61 days old, 5-9 are 60 days old, 10-12 are recent
+        Long id = noteService.createNewNote(new NoteRequestModel("compacted", "version 1 of compacted note")).getId();
+        for (int i = 2; i <= 12; i++) {
+            noteService.modifyNote(new NoteRequestModel("compacted", "version " + i + " of compacted note"));
+        }
+        List<NoteVersion> versions = versionsOf(id);
+        LocalDateTime now = LocalDateTime.now();
+        for (NoteVersion version : versions.subList(0, 9)) {
+            version.setDateTime(now.minusDays(version.getVersion() <= 4 ? 61 : 60).plusMinutes(version.getVersion()));
+        }
+        noteVersionRepository.saveAll(versions);
+        long revision = archiveService.getRevision();
+
+        // when
+        CompactionReportModel report = noteCompactionService.compact();
+
+        // then - the last version of every old day and the last 3 versions are kept
+        List<NoteVersion> kept = versionsOf(id);
+        assertThat(kept.stream().map(NoteVersion::getVersion).collect(Collectors.toList()),
+                equalTo(Arrays.asList(4, 9, 10, 11, 12)));
+        assertThat(kept.get(0).isSnapshot(), is(true));
+        for (NoteVersion version : kept) {
+            assertThat(version.getContent(), equalTo("version " + version.getVersion() + " of compacted note"));
+        }
+        assertThat(report.getVersionsRemoved(), equalTo(7L));
+        assertThat(report.getVersionsRebased(), equalTo(5L));
+        assertThat(report.getNotesCompacted(), equalTo(1L));
+        assertThat(archiveService.getRevision(), greaterThan(revision));
+        assertThat(archiveService.getChanges(0, 100).getChanges().size(), equalTo(5));
+
+        // and the note can still be modified
+        noteService.modifyNote(new NoteRequestModel("compacted", "version 13 of compacted note"));
+        assertThat(noteService.getAtVersion(id, 13).getContent(), equalTo("version 13 of compacted note"));
+    }
+
+    @Test
+    void compactShouldPurgeOnlyNotesDeletedLongAgo() {
+        // given
+        Long oldId = noteService.createNewNote(new NoteRequestModel("deleted long ago", "content")).getId();
+        noteService.modifyNote(new NoteRequestModel("deleted long ago", "modified content"));
+        noteService.removeNoteById(oldId);
+        Note old = noteRepository.findById(oldId).get();
+        old.setDeletedAt(LocalDateTime.now().minusDays(100));
+        noteRepository.save(old);
+        Long recentId = noteService.createNewNote(new NoteRequestModel("deleted recently", "content")).getId();
+        noteService.removeNoteById(recentId);
+        long revision = archiveService.getRevision();
+
+        // when
+        CompactionReportModel report = noteCompactionService.compact();
+
+        // then
+        assertThat(noteRepository.existsById(oldId), is(false));
+        assertThat(versionsOf(oldId).isEmpty(), is(true));
+        assertThat(noteRepository.existsById(recentId), is(true));
+        assertThat(report.getNotesPurged(), equalTo(1L));
+        assertThat(report.getVersionsRemoved(), equalTo(2L));
+        assertThat(report.getChangesRemoved(), equalTo(2L));
+        assertThat(archiveService.getRevision(), greaterThan(revision));
+        assertThat(noteCompactionService.getLastReport().get().getFinished() != null, is(true));
+    }
+
+    @Test
+    void purgedNoteShouldLeaveItsDeletionInChangeFeed() {
+        // given
+        Long id = noteService.createNewNote(new NoteRequestModel("purged", "content")).getId();
+        noteService.removeNoteById(id);
+        Note deleted = noteRepository.findById(id).get();
+        deleted.setDeletedAt(LocalDateTime.now().minusDays(100));
+        noteRepository.save(deleted);
+
+        // when
+        noteCompactionService.compact();
+
+        // then - client which has not read the feed before the purge still learns about the deletion
+        List<NoteChangeModel> changes = archiveService.getChanges(0, 100).getChanges();
+        assertThat(noteRepository.existsById(id), is(false));
+        assertThat(changes.size(), equalTo(1));
+        assertThat(changes.get(0).getType(), equalTo(NoteChange.Type.DELETED));
+        assertThat(changes.get(0).getNoteId(), equalTo(id));
+        assertThat(changes.get(0).getTitle(), equalTo("purged"));
+    }
+
+    private List<NoteVersion> versionsOf(Long id) {
+        return noteVersionRepository.findByNoteIdInOrderByNoteIdAscVersionAsc(Collections.singletonList(id));
+    }
+}
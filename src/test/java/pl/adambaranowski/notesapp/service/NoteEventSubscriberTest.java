@@ -0,0 +1,73 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+
+class NoteEventSubscriberTest {
+
+    @Test
+    void offerShouldCoalesceEventsOfTheSameNote() {
+        // given
+        NoteEventSubscriber subscriber = new NoteEventSubscriber(new SseEmitter(), 10);
+
+        // when
+        subscriber.offer(event(NoteChangedEvent.Type.MODIFIED, 1L, 2));
+        subscriber.offer(event(NoteChangedEvent.Type.CREATED, 2L, 1));
+        subscriber.offer(event(NoteChangedEvent.Type.MODIFIED, 1L, 4));
+        subscriber.offer(event(NoteChangedEvent.Type.MODIFIED, 1L, 3));
+        List<NoteChangedEvent> events = subscriber.takePending();
+
+        // then - the first waiting note keeps its position and has the latest version
+        assertThat(events.stream().map(NoteChangedEvent::getNoteId).collect(Collectors.toList()), equalTo(List.of(1L, 2L)));
+        assertThat(events.get(0).getVersionNumber(), equalTo(4));
+        assertThat(subscriber.takePending(), is(empty()));
+    }
+
+    @Test
+    void offerShouldRejectEventOfNewNoteWhenQueueIsFull() {
+        // given
+        NoteEventSubscriber subscriber = new NoteEventSubscriber(new SseEmitter(), 2);
+        subscriber.offer(event(NoteChangedEvent.Type.CREATED, 1L, 1));
+        subscriber.offer(event(NoteChangedEvent.Type.CREATED, 2L, 1));
+
+        // when
+        boolean coalesced = subscriber.offer(event(NoteChangedEvent.Type.DELETED, 2L, 1));
+        boolean overflowed = subscriber.offer(event(NoteChangedEvent.Type.CREATED, 3L, 1));
+
+        // then
+        assertThat(coalesced, is(true));
+        assertThat(overflowed, is(false));
+        assertThat(subscriber.takePending().get(1).getType(), equalTo(NoteChangedEvent.Type.DELETED));
+    }
+
+    @Test
+    void scheduleShouldHandOverSubscriberOnlyOnceUntilItIsDrained() {
+        // given
+        NoteEventSubscriber subscriber = new NoteEventSubscriber(new SseEmitter(), 10);
+        subscriber.offer(event(NoteChangedEvent.Type.CREATED, 1L, 1));
+
+        // when
+        boolean first = subscriber.schedule();
+        boolean second = subscriber.schedule();
+        subscriber.takePending();
+        subscriber.takePending();
+        subscriber.offer(event(NoteChangedEvent.Type.CREATED, 2L, 1));
+
+        // then
+        assertThat(first, is(true));
+        assertThat(second, is(false));
+        assertThat(subscriber.schedule(), is(true));
+    }
+
+    private static NoteChangedEvent event(NoteChangedEvent.Type type, Long noteId, int version) {
+        return new NoteChangedEvent(type, noteId, "note " + noteId, "content", version);
+    }
+}
@@ -0,0 +1,129 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.adambaranowski.notesapp.model.NoteResponseModel;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteSearchServiceTest {
+
+    private NoteService noteService;
+
+    private NoteSearchService noteSearchService;
+
+    @BeforeEach
+    void createIndex() {
+        noteService = mock(NoteService.class);
+        noteSearchService = new NoteSearchService(mock(NoteRepository.class), noteService, 100);
+    }
+
+    @Test
+    void findIdsShouldReturnNotesContainingAllWords() {
+        // given
+        created(1L, "Shopping list", "Milk, bread and eggs", 1);
+        created(2L, "Recipe", "Bread with butter", 1);
+        created(3L, "Todo", "Buy milk", 1);
+
+        // when
+        List<Long> bread = noteSearchService.findIds("BREAD", 10);
+        List<Long> milkAndBread = noteSearchService.findIds("milk bread", 10);
+        List<Long> byTitle = noteSearchService.findIds("shopping", 10);
+
+        // then
+        assertThat(bread, equalTo(Arrays.asList(1L, 2L)));
+        assertThat(milkAndBread, equalTo(Collections.singletonList(1L)));
+        assertThat(byTitle, equalTo(Collections.singletonList(1L)));
+        assertThat(noteSearchService.findIds("cheese", 10), is(empty()));
+    }
+
+    @Test
+    void findIdsShouldFollowModificationsAndDeletes() {
+        // given
+        created(1L, "Todo", "Buy milk", 1);
+
+        // when
+        noteSearchService.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.MODIFIED, 1L, "Todo", "Buy cheese", 2));
+
+        // then
+        assertThat(noteSearchService.findIds("milk", 10), is(empty()));
+        assertThat(noteSearchService.findIds("cheese", 10), equalTo(Collections.singletonList(1L)));
+
+        // when
+        noteSearchService.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.DELETED, 1L, "Todo", "Buy cheese", 2));
+
+        // then
+        assertThat(noteSearchService.findIds("cheese", 10), is(empty()));
+        assertThat(noteSearchService.getIndexedNoteCount(), is(0));
+
+        // when - change committed before deletion arrives late
+        noteSearchService.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.MODIFIED, 1L, "Todo", "Buy cheese", 2));
+
+        // then
+        assertThat(noteSearchService.findIds("cheese", 10), is(empty()));
+        assertThat(noteSearchService.getIndexedNoteCount(), is(0));
+    }
+
+    @Test
+    void findIdsShouldReturnLowestMatchingIdsUpToLimit() {
+        // given
+        created(5L, "Todo", "Buy milk and bread", 1);
+        created(3L, "Todo", "Buy milk", 1);
+        created(4L, "Todo", "Buy bread", 1);
+        created(1L, "Todo", "Bread and milk", 1);
+        created(2L, "Todo", "Milk with bread", 1);
+
+        // when
+        List<Long> found = noteSearchService.findIds("milk bread", 2);
+
+        // then
+        assertThat(found, equalTo(Arrays.asList(1L, 2L)));
+    }
+
+    @Test
+    void searchShouldReadFoundNotesAtOnce() {
+        // given
+        created(1L, "Shopping list", "Milk, bread and eggs", 1);
+        created(2L, "Recipe", "Bread with butter", 1);
+        List<NoteResponseModel> notes = Arrays.asList(new NoteResponseModel(), new NoteResponseModel());
+        when(noteService.getByIds(Arrays.asList(1L, 2L))).thenReturn(notes);
+
+        // when
+        List<NoteResponseModel> found = noteSearchService.search("bread", 10);
+
+        // then
+        assertThat(found, equalTo(notes));
+        verify(noteService, never()).getById(anyLong());
+    }
+
+    @Test
+    void findIdsShouldIgnoreChangesDeliveredOutOfOrder() {
+        // given
+        created(1L, "Todo", "Buy milk", 1);
+        noteSearchService.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.MODIFIED, 1L, "Todo", "Buy cheese", 3));
+
+        // when - older change arrives late
+        noteSearchService.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.MODIFIED, 1L, "Todo", "Buy bread", 2));
+
+        // then
+        assertThat(noteSearchService.findIds("cheese", 10), equalTo(Collections.singletonList(1L)));
+        assertThat(noteSearchService.findIds("bread", 10), is(empty()));
+    }
+
+    private void created(Long id, String title, String content, int version) {
+        noteSearchService.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.CREATED, id, title, content, version));
+    }
+}
@@ -0,0 +1,179 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import pl.adambaranowski.notesapp.NotesAppApplication;
+import pl.adambaranowski.notesapp.exception.NoteAlreadyExistException;
+import pl.adambaranowski.notesapp.exception.NoteModificationConflictException;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.repository.NoteVersionRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.everyItem;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Stress test of concurrent creations and modifications of the same Note - every operation runs in its own
+ * transaction, so they really compete (unlike in NoteServiceIntegrationTest).
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(
+        classes = NotesAppApplication.class,
+        properties = "notes.modify.max-attempts=3"
+)
+@TestPropertySource(
+        locations = "classpath:application-integrationtest.properties"
+)
+@DirtiesContext
+class NoteServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private static final int MODIFICATIONS_PER_THREAD = 25;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    NoteRepository noteRepository;
+
+    @Autowired
+    NoteVersionRepository noteVersionRepository;
+
+    @Test
+    void concurrentModificationsShouldNeitherBeLostNorDuplicated() throws Exception {
+        // given
+        Long id = noteService.createNewNote(new NoteRequestModel("contended", "initial")).getId();
+        Set<String> succeeded = ConcurrentHashMap.newKeySet();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < MODIFICATIONS_PER_THREAD; i++) {
+                    String content = "thread " + thread + " modification " + i;
+                    try {
+                        noteService.modifyNote(new NoteRequestModel("contended", content));
+                        succeeded.add(content);
+                    } catch (NoteModificationConflictException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // then - every successful modification is exactly one version, numbered without gaps
+        List<NoteVersion> versions = noteVersionRepository.findByNoteIdInOrderByNoteIdAscVersionAsc(Collections.singletonList(id));
+        List<Integer> numbers = versions.stream().map(NoteVersion::getVersion).collect(Collectors.toList());
+        Set<String> contents = versions.stream().skip(1).map(NoteVersion::getContent).collect(Collectors.toSet());
+
+        assertThat(succeeded.size() + conflicts.get(), equalTo(THREADS * MODIFICATIONS_PER_THREAD));
+        assertThat(versions.size(), equalTo(1 + succeeded.size()));
+        assertThat(new HashSet<>(numbers).size(), equalTo(numbers.size()));
+        assertThat(numbers.get(numbers.size() - 1), equalTo(numbers.size()));
+        assertThat(contents, equalTo(succeeded));
+        assertThat(noteService.getById(id).getVersion(), equalTo(numbers.size()));
+    }
+
+    @Test
+    void concurrentCreationsOfNewNoteShouldCreateItOnce() throws Exception {
+        // when
+        List<Exception> failures = createConcurrently("created concurrently");
+
+        // then
+        assertThat(failures.size(), equalTo(THREADS - 1));
+        assertThat(failures, everyItem(instanceOf(NoteAlreadyExistException.class)));
+        assertThat(noteRepository.findByTitle("created concurrently").isPresent(), equalTo(true));
+    }
+
+    @Test
+    void concurrentCreationsOfDeletedNoteShouldRecreateItOnce() throws Exception {
+        // given
+        noteService.createNewNote(new NoteRequestModel("recreated concurrently", "initial"));
+        noteService.removeNoteByTitle("recreated concurrently");
+
+        // when
+        List<Exception> failures = createConcurrently("recreated concurrently");
+
+        // then
+        assertThat(failures.size(), equalTo(THREADS - 1));
+        assertThat(failures, everyItem(instanceOf(NoteAlreadyExistException.class)));
+        assertThat(noteService.getByTitle("recreated concurrently").getVersion(), equalTo(2));
+    }
+
+    @Test
+    void violationNotCausedByConcurrentModificationShouldNotBeRetried() {
+        // given - title longer than its column
+        NoteRequestModel tooLong = new NoteRequestModel("x".repeat(300), "content");
+
+        // when
+        Exception exception = assertThrows(Exception.class, () -> noteService.createNewNote(tooLong));
+
+        // then
+        assertThat(exception, instanceOf(DataIntegrityViolationException.class));
+    }
+
+    /**
+     * Creates note of given title by THREADS threads at the same time
+     *
+     * @return exceptions of creations which did not succeed
+     */
+    private List<Exception> createConcurrently(String title) throws Exception {
+        List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    noteService.createNewNote(new NoteRequestModel(title, "thread " + thread));
+                } catch (Exception e) {
+                    failures.add(e);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        return failures;
+    }
+}
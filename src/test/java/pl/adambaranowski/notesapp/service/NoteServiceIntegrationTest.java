@@ -1,26 +1,46 @@
 package pl.adambaranowski.notesapp.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 import pl.adambaranowski.notesapp.exception.NoteAlreadyExistException;
+import pl.adambaranowski.notesapp.metrics.StatementCounter;
 import pl.adambaranowski.notesapp.exception.NoteNotFoundException;
+import pl.adambaranowski.notesapp.exception.NoteVersionMismatchException;
+import pl.adambaranowski.notesapp.model.NoteBatchResultModel;
 import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.model.NoteVersion;
+import pl.adambaranowski.notesapp.model.NoteVersionKey;
+import pl.adambaranowski.notesapp.model.NoteVersionModel;
 import pl.adambaranowski.notesapp.model.NoteResponseModel;
+import pl.adambaranowski.notesapp.repository.NoteChangeRepository;
 import pl.adambaranowski.notesapp.repository.NoteRepository;
+import pl.adambaranowski.notesapp.repository.NoteVersionRepository;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.collection.IsEmptyCollection.empty;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -31,9 +51,24 @@ class NoteServiceIntegrationTest {
     @Autowired
     NoteService noteService;
 
+    @Autowired
+    NoteCache noteCache;
+
+    @Autowired
+    NoteVersionRepository noteVersionRepository;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    StatementCounter statementCounter;
+
     @BeforeEach
     public void cleanRepository(){
 
+        //every test rolls back its transaction, so notes cached by previous test do not exist anymore
+        noteCache.invalidateAll();
+
         //noteRepository.deleteAll();
         System.out.println("=========CLEANING========");
     }
@@ -46,6 +81,18 @@ class NoteServiceIntegrationTest {
         @Autowired
         NoteRepository noteRepository;
 
+        @Autowired
+        NoteVersionRepository noteVersionRepository;
+
+        @Autowired
+        NoteChangeRepository noteChangeRepository;
+
+        @Autowired
+        ApplicationEventPublisher eventPublisher;
+
+        @Autowired
+        PlatformTransactionManager transactionManager;
+
         @BeforeEach
         public void cleanRepository(){
 
@@ -53,9 +100,28 @@ class NoteServiceIntegrationTest {
             System.out.println("=========CLEANING========");
         }
 
+        /**
+         * Static, because it customizes Hibernate, which has to be started before this configuration
+         */
+        @Bean
+        public static StatementCounter statementCounter(){
+            return new StatementCounter(new SimpleMeterRegistry());
+        }
+
+        @Bean
+        public NoteCache noteCache(){
+            return new NoteCache(100);
+        }
+
+        @Bean
+        public NoteChangeLog noteChangeLog(){
+            return new NoteChangeLog(noteChangeRepository);
+        }
+
         @Bean
         public NoteService noteService(){
-            return new NoteService(noteRepository);
+            return new NoteService(noteRepository, noteVersionRepository, noteCache(), noteChangeLog(),
+                    eventPublisher, transactionManager, 5, 3);
         }
     }
 
@@ -112,6 +178,125 @@ class NoteServiceIntegrationTest {
         assertThat(noteResponseModel2.getTitle(), equalTo(noteRequestModel2.getTitle()));
     }
 
+    @Test
+    void getAllNotesShouldReturnPagesOfNotDeletedNotes() {
+        // given
+        for (int i = 1; i <= 5; i++) {
+            noteService.createNewNote(new NoteRequestModel("page " + i, "content " + i));
+        }
+        noteService.removeNoteByTitle("page 2");
+
+        // when
+        List<NoteResponseModel> firstPage = noteService.getAllNotes(0, 2);
+        List<NoteResponseModel> secondPage = noteService.getAllNotes(firstPage.get(1).getId(), 2);
+        List<NoteResponseModel> lastPage = noteService.getAllNotes(secondPage.get(1).getId(), 2);
+
+        // then
+        assertThat(firstPage.get(0).getTitle(), equalTo("page 1"));
+        assertThat(firstPage.get(1).getTitle(), equalTo("page 3"));
+        assertThat(secondPage.get(0).getTitle(), equalTo("page 4"));
+        assertThat(secondPage.get(1).getTitle(), equalTo("page 5"));
+        assertThat(lastPage, is(empty()));
+    }
+
+    @Test
+    void getAllNotesShouldSendOneStatementForWholePage() {
+        // given
+        for (int i = 1; i <= 30; i++) {
+            noteService.createNewNote(new NoteRequestModel("page " + i, "content " + i));
+            noteService.modifyNote(new NoteRequestModel("page " + i, "modified content " + i));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<NoteResponseModel> page;
+        int statements;
+        try (StatementCounter.Scope scope = statementCounter.startCounting()) {
+            page = noteService.getAllNotes(0, 100);
+            statements = scope.get();
+        }
+
+        // then - versions of notes are not loaded
+        assertThat(page.size(), equalTo(30));
+        assertThat(statements, equalTo(1));
+    }
+
+    @Test
+    void modifyNoteShouldSendTheSameStatementsWhateverNumberOfVersions() {
+        // given
+        noteService.createNewNote(new NoteRequestModel("young", "version 1"));
+        noteService.createNewNote(new NoteRequestModel("old", "version 1"));
+        for (int i = 2; i <= 40; i++) {
+            noteService.modifyNote(new NoteRequestModel("old", "version " + i));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        int youngStatements;
+        try (StatementCounter.Scope scope = statementCounter.startCounting()) {
+            noteService.modifyNote(new NoteRequestModel("young", "version 2"));
+            youngStatements = scope.get();
+        }
+        int oldStatements;
+        try (StatementCounter.Scope scope = statementCounter.startCounting()) {
+            noteService.modifyNote(new NoteRequestModel("old", "version 41"));
+            oldStatements = scope.get();
+        }
+
+        // then
+        assertThat(oldStatements, equalTo(youngStatements));
+        assertThat(oldStatements, lessThanOrEqualTo(6));
+    }
+
+    @Test
+    void batchModificationsShouldNotSendStatementsForEveryNote() {
+        // given
+        for (int i = 1; i <= 40; i++) {
+            noteService.createNewNote(new NoteRequestModel("batch " + i, "version 1"));
+        }
+        Map<Long, String> smallModifications = modificationsByIdOf(10, "version 4");
+        Map<Long, String> bigModifications = modificationsByIdOf(40, "version 5");
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        int smallSaveStatements = countStatementsOf(() -> noteService.saveNotes(modificationsOf(10, "version 2")));
+        int bigSaveStatements = countStatementsOf(() -> noteService.saveNotes(modificationsOf(40, "version 3")));
+        int smallModifyStatements = countStatementsOf(() -> noteService.modifyNotes(smallModifications));
+        int bigModifyStatements = countStatementsOf(() -> noteService.modifyNotes(bigModifications));
+
+        // then - only ids taken from sequences may need one more statement per sequence
+        assertThat(bigSaveStatements, lessThanOrEqualTo(smallSaveStatements + 2));
+        assertThat(bigModifyStatements, lessThanOrEqualTo(smallModifyStatements + 2));
+        assertThat(bigSaveStatements, lessThanOrEqualTo(10));
+        assertThat(bigModifyStatements, lessThanOrEqualTo(10));
+        assertThat(noteService.getByTitle("batch 1").getVersion(), equalTo(5));
+        assertThat(noteService.getByTitle("batch 40").getVersion(), equalTo(3));
+    }
+
+    @Test
+    void getHistoryShouldSendOneStatement() {
+        // given
+        Long id = noteService.createNewNote(new NoteRequestModel("history", "version 1")).getId();
+        for (int i = 2; i <= 30; i++) {
+            noteService.modifyNote(new NoteRequestModel("history", "version " + i));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        int statements;
+        try (StatementCounter.Scope scope = statementCounter.startCounting()) {
+            noteService.getHistory(id, Integer.MAX_VALUE, 20);
+            statements = scope.get();
+        }
+
+        // then
+        assertThat(statements, equalTo(1));
+    }
+
     @Test
     void getAllNotesShouldReturnEmptyListWhenNoNotes() {
         // given
@@ -140,6 +325,225 @@ class NoteServiceIntegrationTest {
 
     }
 
+    @Test
+    void getByTitleShouldReturnRecentContentAndCreationTimeOfFirstVersion() {
+        // given
+        NoteRequestModel created = new NoteRequestModel("versioned", "version 1");
+
+        // when
+        noteService.createNewNote(created);
+        NoteResponseModel firstVersion = noteService.getByTitle(created.getTitle());
+        for (int i = 2; i <= 50; i++) {
+            noteService.modifyNote(new NoteRequestModel("versioned", "version " + i));
+        }
+        NoteResponseModel response = noteService.getByTitle(created.getTitle());
+
+        // then
+        assertThat(response.getContent(), equalTo("version 50"));
+        assertThat(response.getCreated(), equalTo(firstVersion.getCreated()));
+        assertFalse(response.getModified().isBefore(firstVersion.getModified()));
+    }
+
+    @Test
+    void getHistoryShouldReturnPagesOfVersionsNewestFirst() {
+        // given
+        Long id = noteService.createNewNote(new NoteRequestModel("history", "version 1")).getId();
+        for (int i = 2; i <= 12; i++) {
+            noteService.modifyNote(new NoteRequestModel("history", "version " + i));
+        }
+
+        // when
+        List<NoteVersionModel> firstPage = noteService.getHistory(id, Integer.MAX_VALUE, 5);
+        List<NoteVersionModel> lastPage = noteService.getHistory(id, 3, 5);
+
+        // then
+        assertThat(firstPage.stream().map(NoteVersionModel::getVersion).collect(Collectors.toList()),
+                equalTo(Arrays.asList(12, 11, 10, 9, 8)));
+        assertThat(lastPage.stream().map(NoteVersionModel::getVersion).collect(Collectors.toList()),
+                equalTo(Arrays.asList(2, 1)));
+        assertThat(firstPage.get(0).getContentBytes(), equalTo("version 12".length()));
+        assertThrows(NoteNotFoundException.class, () -> noteService.getHistory(id + 1000, Integer.MAX_VALUE, 5));
+    }
+
+    @Test
+    void getAtVersionShouldReturnContentOfGivenVersion() {
+        // given - with snapshot interval 5 most versions are stored as deltas
+        Long id = noteService.createNewNote(new NoteRequestModel("history", "version 1")).getId();
+        for (int i = 2; i <= 12; i++) {
+            noteService.modifyNote(new NoteRequestModel("history", "version " + i));
+        }
+
+        // when
+        NoteResponseModel first = noteService.getAtVersion(id, 1);
+        NoteResponseModel seventh = noteService.getAtVersion(id, 7);
+
+        // then
+        assertThat(first.getContent(), equalTo("version 1"));
+        assertThat(seventh.getContent(), equalTo("version 7"));
+        assertThat(seventh.getVersion(), equalTo(7));
+        assertThat(seventh.getCreated(), equalTo(first.getCreated()));
+        assertThrows(NoteNotFoundException.class, () -> noteService.getAtVersion(id, 13));
+    }
+
+    @Test
+    void getAtTimeShouldReturnVersionCurrentAtGivenTime() {
+        // given - the first version is an hour old
+        Long id = noteService.createNewNote(new NoteRequestModel("history", "version 1")).getId();
+        LocalDateTime created = LocalDateTime.now().minusHours(1);
+        noteVersionRepository.findByNoteIdAndVersion(id, 1).get().setDateTime(created);
+        noteService.modifyNote(new NoteRequestModel("history", "version 2"));
+
+        // when
+        NoteResponseModel current = noteService.getAtTime(id, LocalDateTime.now().plusMinutes(1));
+        NoteResponseModel halfHourAgo = noteService.getAtTime(id, created.plusMinutes(30));
+
+        // then
+        assertThat(current.getContent(), equalTo("version 2"));
+        assertThat(halfHourAgo.getVersion(), equalTo(1));
+        assertThat(halfHourAgo.getContent(), equalTo("version 1"));
+        assertThrows(NoteNotFoundException.class, () -> noteService.getAtTime(id, created.minusMinutes(1)));
+    }
+
+    @Test
+    void modifyNoteShouldInvalidateCachedNote() {
+        // given
+        NoteRequestModel created = new NoteRequestModel("cached", "first note");
+        NoteRequestModel modified = new NoteRequestModel("cached", "modified");
+        noteService.createNewNote(created);
+        Long id = noteService.getByTitle(created.getTitle()).getId();
+        noteService.getById(id);
+
+        // when
+        noteService.modifyNote(modified);
+
+        // then
+        assertThat(noteService.getByTitle(created.getTitle()).getContent(), equalTo(modified.getContent()));
+        assertThat(noteService.getById(id).getContent(), equalTo(modified.getContent()));
+    }
+
+    @Test
+    void removeNoteShouldInvalidateCachedNote() {
+        // given
+        NoteRequestModel created = new NoteRequestModel("cached", "first note");
+        noteService.createNewNote(created);
+        Long id = noteService.getByTitle(created.getTitle()).getId();
+        noteService.getById(id);
+
+        // when
+        noteService.removeNoteById(id);
+
+        // then
+        assertThrows(NoteNotFoundException.class, () -> noteService.getById(id));
+        assertThrows(NoteNotFoundException.class, () -> noteService.getByTitle(created.getTitle()));
+    }
+
+    @Test
+    void saveNotesShouldCreateNewAndModifyExistingNotes() {
+        // given
+        noteService.createNewNote(new NoteRequestModel("existing", "first version"));
+        noteService.createNewNote(new NoteRequestModel("deleted", "first version"));
+        noteService.removeNoteByTitle("deleted");
+
+        // when
+        List<NoteBatchResultModel> results = noteService.saveNotes(Arrays.asList(
+                new NoteRequestModel("new", "first version"),
+                new NoteRequestModel("existing", "second version"),
+                new NoteRequestModel("deleted", "second version"),
+                new NoteRequestModel("new", "second version")
+        ));
+
+        // then
+        assertThat(results.get(0).getStatus(), equalTo(NoteBatchResultModel.Status.CREATED));
+        assertThat(results.get(1).getStatus(), equalTo(NoteBatchResultModel.Status.MODIFIED));
+        assertThat(results.get(2).getStatus(), equalTo(NoteBatchResultModel.Status.CREATED));
+        assertThat(results.get(3).getStatus(), equalTo(NoteBatchResultModel.Status.MODIFIED));
+        assertThat(results.get(3).getId(), equalTo(results.get(0).getId()));
+        assertThat(noteService.getByTitle("new").getContent(), equalTo("second version"));
+        assertThat(noteService.getByTitle("existing").getContent(), equalTo("second version"));
+        assertThat(noteService.getByTitle("deleted").getContent(), equalTo("second version"));
+    }
+
+    @Test
+    void modifyNoteShouldStoreVersionsAsDeltasOfPeriodicSnapshots() {
+        // given
+        StringBuilder content = new StringBuilder("Long note which is edited many times. ");
+        Long id = noteService.createNewNote(new NoteRequestModel("edited", content.toString())).getId();
+
+        // when
+        for (int i = 2; i <= 12; i++) {
+            content.append("Line ").append(i).append(". ");
+            noteService.modifyNote(new NoteRequestModel("edited", content.toString()));
+        }
+        List<NoteVersion> versions = noteVersionRepository.findByNoteIdInOrderByNoteIdAscVersionAsc(Collections.singletonList(id));
+
+        // then
+        assertThat(versions.size(), equalTo(12));
+        StringBuilder expected = new StringBuilder("Long note which is edited many times. ");
+        for (NoteVersion version : versions) {
+            if (version.getVersion() > 1)
+                expected.append("Line ").append(version.getVersion()).append(". ");
+            assertThat(version.getContent(), equalTo(expected.toString()));
+            //snapshot interval in this test is 5
+            assertThat(version.isSnapshot(), is((version.getVersion() - 1) % 5 == 0));
+        }
+        assertTrue(versions.get(11).getStoredBytes() < versions.get(11).getContentBytes());
+    }
+
+    @Test
+    void bigContentShouldBeReadBackUnchangedFromDatabase() {
+        // given - content above compression threshold
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append("line ").append(i).append(" of big note ąęść\n");
+        }
+        NoteRequestModel created = new NoteRequestModel("big", content.toString());
+        NoteRequestModel modified = new NoteRequestModel("big", content + "one more line");
+
+        // when
+        noteService.createNewNote(created);
+        noteService.modifyNote(modified);
+        entityManager.flush();
+        entityManager.clear();
+        noteCache.invalidateAll();
+        NoteResponseModel response = noteService.getByTitle("big");
+        List<NoteVersion> versions = noteVersionRepository.findByNoteIdInOrderByNoteIdAscVersionAsc(
+                Collections.singletonList(response.getId()));
+
+        // then
+        assertThat(response.getContent(), equalTo(modified.getContent()));
+        assertThat(versions.get(0).getContent(), equalTo(created.getContent()));
+        assertThat(versions.get(1).getContent(), equalTo(modified.getContent()));
+    }
+
+    @Test
+    void modifyNoteShouldReturnNumberOfNewVersion() {
+        // given
+        Long id = noteService.createNewNote(new NoteRequestModel("counted", "first version")).getId();
+
+        // when
+        int second = noteService.modifyNote(new NoteRequestModel("counted", "second version"));
+        NoteVersionKey third = noteService.modifyNote(new NoteRequestModel("counted", "third version"), new NoteVersionKey(id, 2));
+
+        // then
+        assertThat(second, equalTo(2));
+        assertThat(third, equalTo(new NoteVersionKey(id, 3)));
+        assertThat(noteService.getByTitle("counted").getVersion(), equalTo(3));
+    }
+
+    @Test
+    void modifyNoteShouldThrowAnExceptionWhenExpectedVersionIsNotTheRecentOne() {
+        // given
+        Long id = noteService.createNewNote(new NoteRequestModel("conditional", "first version")).getId();
+        noteService.modifyNote(new NoteRequestModel("conditional", "second version"));
+
+        // when
+        // then
+        assertThrows(NoteVersionMismatchException.class,
+                () -> noteService.modifyNote(new NoteRequestModel("conditional", "stale edit"), new NoteVersionKey(id, 1)));
+        assertThrows(NoteVersionMismatchException.class,
+                () -> noteService.modifyNote(new NoteRequestModel("conditional", "stale edit"), new NoteVersionKey(id + 1, 2)));
+    }
+
     @Test
     void modifyNoteShouldThrowAnExceptionWhenTryToModifyNonExistingNote() {
         // given
@@ -178,10 +582,10 @@ class NoteServiceIntegrationTest {
 
         noteService.getAllNotes().forEach(noteResponseModel -> System.out.println(noteResponseModel.getId()+noteResponseModel.getTitle()+noteResponseModel.getContent()));
 
-        noteService.removeNoteById(1L);
+        noteService.removeNoteById(byTitle.getId());
 
         // then
-        assertThrows(NoteNotFoundException.class, ()->  noteService.getById(1L));
+        assertThrows(NoteNotFoundException.class, ()->  noteService.getById(byTitle.getId()));
     }
 
     @Test
@@ -204,11 +608,36 @@ class NoteServiceIntegrationTest {
         NoteRequestModel noteRequestModel = new NoteRequestModel("title", "content");
 
         // when
-        noteService.createNewNote(noteRequestModel);
-        NoteResponseModel responseNote = noteService.getById(1L);
+        Long id = noteService.createNewNote(noteRequestModel).getId();
+        NoteResponseModel responseNote = noteService.getById(id);
 
         // then
         assertThat(responseNote.getContent(), equalTo(noteRequestModel.getContent()));
         assertThat(responseNote.getTitle(), equalTo(noteRequestModel.getTitle()));
     }
-}
\ No newline at end of file
+
+    private int countStatementsOf(Runnable operation) {
+        try (StatementCounter.Scope scope = statementCounter.startCounting()) {
+            operation.run();
+            entityManager.flush();
+            entityManager.clear();
+            return scope.get();
+        }
+    }
+
+    private Map<Long, String> modificationsByIdOf(int notes, String content) {
+        Map<Long, String> modifications = new LinkedHashMap<>();
+        for (int i = 1; i <= notes; i++) {
+            modifications.put(noteService.getByTitle("batch " + i).getId(), content + " of note " + i);
+        }
+        return modifications;
+    }
+
+    private static List<NoteRequestModel> modificationsOf(int notes, String content) {
+        List<NoteRequestModel> modifications = new ArrayList<>();
+        for (int i = 1; i <= notes; i++) {
+            modifications.add(new NoteRequestModel("batch " + i, content + " of note " + i));
+        }
+        return modifications;
+    }
+}
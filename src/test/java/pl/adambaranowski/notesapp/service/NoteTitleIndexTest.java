@@ -0,0 +1,84 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.adambaranowski.notesapp.model.NoteTitleModel;
+import pl.adambaranowski.notesapp.repository.NoteRepository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.mockito.Mockito.mock;
+
+class NoteTitleIndexTest {
+
+    private NoteTitleIndex noteTitleIndex;
+
+    @BeforeEach
+    void createIndex() {
+        noteTitleIndex = new NoteTitleIndex(mock(NoteRepository.class), 100);
+    }
+
+    @Test
+    void findByPrefixShouldReturnMatchingTitlesInAlphabeticalOrder() {
+        // given
+        created(1L, "shopping list", 1);
+        created(2L, "Shop", 1);
+        created(3L, "Recipe", 1);
+        created(4L, "short note", 1);
+
+        // when
+        List<String> found = titles(noteTitleIndex.findByPrefix("SHO", 10));
+
+        // then
+        assertThat(found, equalTo(Arrays.asList("Shop", "shopping list", "short note")));
+        assertThat(noteTitleIndex.findByPrefix("x", 10), is(empty()));
+    }
+
+    @Test
+    void findByPrefixShouldReturnAtMostLimitTitles() {
+        // given
+        for (long id = 1; id <= 50; id++) {
+            created(id, "note " + id, 1);
+        }
+
+        // when
+        List<NoteTitleModel> found = noteTitleIndex.findByPrefix("note", 5);
+
+        // then
+        assertThat(found.size(), equalTo(5));
+    }
+
+    @Test
+    void findByPrefixShouldFollowDeletesAndIgnoreLateChanges() {
+        // given
+        created(1L, "Todo", 1);
+
+        // when
+        noteTitleIndex.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.DELETED, 1L, "Todo", "content", 1));
+        created(1L, "Todo", 1);
+
+        // then
+        assertThat(noteTitleIndex.findByPrefix("to", 10), is(empty()));
+        assertThat(noteTitleIndex.getIndexedNoteCount(), is(0));
+
+        // when - note created again
+        created(1L, "Todo", 2);
+
+        // then
+        assertThat(titles(noteTitleIndex.findByPrefix("to", 10)), equalTo(Arrays.asList("Todo")));
+    }
+
+    private void created(Long id, String title, int version) {
+        noteTitleIndex.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.CREATED, id, title, "content", version));
+    }
+
+    private static List<String> titles(List<NoteTitleModel> models) {
+        return models.stream().map(NoteTitleModel::getTitle).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,228 @@
+package pl.adambaranowski.notesapp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import pl.adambaranowski.notesapp.exception.NoteModificationConflictException;
+import pl.adambaranowski.notesapp.exception.NoteNotFoundException;
+import pl.adambaranowski.notesapp.model.NoteRequestModel;
+import pl.adambaranowski.notesapp.model.NoteResponseModel;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteWriteBufferTest {
+
+    private static final NoteResponseModel STORED =
+            new NoteResponseModel(1L, "title", "stored", LocalDateTime.now(), LocalDateTime.now(), 3);
+
+    private NoteService noteService;
+
+    private NoteWriteBuffer noteWriteBuffer;
+
+    @BeforeEach
+    void createBuffer() {
+        noteService = mock(NoteService.class);
+        when(noteService.getByTitle("title")).thenReturn(STORED);
+        //interval long enough not to flush during test
+        noteWriteBuffer = new NoteWriteBuffer(noteService, true, 3_600_000, 100, 100, 2);
+    }
+
+    @AfterEach
+    void shutdownBuffer() {
+        noteWriteBuffer.shutdown();
+    }
+
+    @Test
+    void flushShouldWriteOnlyTheLatestOfCollapsedEdits() {
+        // given
+        noteWriteBuffer.modify(new NoteRequestModel("title", "first"));
+        noteWriteBuffer.modify(new NoteRequestModel("title", "second"));
+        when(noteService.modifyNotes(anyMap())).thenReturn(1);
+
+        // when
+        int modified = noteWriteBuffer.flush();
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Long, String>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(noteService).modifyNotes(batch.capture());
+        assertThat(modified, equalTo(1));
+        assertThat(batch.getValue(), equalTo(Map.of(1L, "second")));
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(false));
+    }
+
+    @Test
+    void overlayShouldReturnBufferedContent() {
+        // given
+        noteWriteBuffer.modify(new NoteRequestModel("title", "buffered"));
+
+        // when
+        NoteResponseModel note = noteWriteBuffer.overlay(STORED);
+
+        // then
+        assertThat(note.getContent(), equalTo("buffered"));
+        assertThat(note.getVersion(), equalTo(3));
+        verify(noteService, never()).modifyNotes(anyMap());
+    }
+
+    @Test
+    void failedFlushShouldKeepEditsInBuffer() {
+        // given
+        noteWriteBuffer.modify(new NoteRequestModel("title", "buffered"));
+        when(noteService.modifyNotes(anyMap()))
+                .thenThrow(new NoteModificationConflictException(new RuntimeException()))
+                .thenReturn(1);
+
+        // when
+        int modified = noteWriteBuffer.flush();
+
+        // then
+        assertThat(modified, equalTo(0));
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(true));
+        assertThat(noteWriteBuffer.flush(), equalTo(1));
+        verify(noteService, times(2)).modifyNotes(anyMap());
+    }
+
+    @Test
+    void editShouldBeDroppedAfterMaxFlushAttempts() {
+        // given
+        noteWriteBuffer.modify(new NoteRequestModel("title", "buffered"));
+        when(noteService.modifyNotes(anyMap())).thenThrow(new IllegalStateException());
+
+        // when
+        noteWriteBuffer.flush();
+        noteWriteBuffer.flush();
+
+        // then
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(false));
+        assertThat(noteWriteBuffer.flush(), equalTo(0));
+        verify(noteService, times(2)).modifyNotes(anyMap());
+    }
+
+    @Test
+    void failingEditShouldNotHoldBackOtherEdits() {
+        // given
+        when(noteService.getByTitle("other")).thenReturn(
+                new NoteResponseModel(2L, "other", "stored", LocalDateTime.now(), LocalDateTime.now(), 1));
+        noteWriteBuffer.modify(new NoteRequestModel("title", "poisoned"));
+        noteWriteBuffer.modify(new NoteRequestModel("other", "fine"));
+        when(noteService.modifyNotes(anyMap())).thenAnswer(invocation -> {
+            Map<Long, String> batch = invocation.getArgument(0);
+            if (batch.containsValue("poisoned"))
+                throw new IllegalStateException();
+            return batch.size();
+        });
+
+        // when
+        int modified = noteWriteBuffer.flush();
+
+        // then
+        assertThat(modified, equalTo(1));
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(true));
+        assertThat(noteWriteBuffer.hasPendingEdit(2L), is(false));
+    }
+
+    @Test
+    void failedFlushOfFullBufferShouldNotFailModification() {
+        // given - buffer of one note
+        noteWriteBuffer.shutdown();
+        noteWriteBuffer = new NoteWriteBuffer(noteService, true, 3_600_000, 1, 100, 100);
+        when(noteService.getByTitle("other")).thenReturn(
+                new NoteResponseModel(2L, "other", "stored", LocalDateTime.now(), LocalDateTime.now(), 1));
+        when(noteService.modifyNotes(anyMap())).thenThrow(new IllegalStateException());
+        noteWriteBuffer.modify(new NoteRequestModel("title", "buffered"));
+
+        // when
+        noteWriteBuffer.modify(new NoteRequestModel("other", "accepted"));
+
+        // then
+        assertThat(noteWriteBuffer.hasPendingEdit(2L), is(true));
+    }
+
+    @Test
+    void editShouldBeVisibleWhileItIsFlushed() {
+        // given
+        noteWriteBuffer.modify(new NoteRequestModel("title", "buffered"));
+        List<Boolean> visibleDuringWrite = new ArrayList<>();
+        when(noteService.modifyNotes(anyMap())).thenAnswer(invocation -> {
+            visibleDuringWrite.add(noteWriteBuffer.hasPendingEdit(1L));
+            return 1;
+        });
+
+        // when
+        noteWriteBuffer.flush();
+
+        // then
+        assertThat(visibleDuringWrite, equalTo(List.of(true)));
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(false));
+    }
+
+    @Test
+    void deletionShouldDropBufferedEdit() {
+        // given
+        noteWriteBuffer.modify(new NoteRequestModel("title", "buffered"));
+
+        // when
+        noteWriteBuffer.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.DELETED, 1L, "title", null, 3));
+
+        // then
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(false));
+        assertThat(noteWriteBuffer.flush(), equalTo(0));
+        verify(noteService, never()).modifyNotes(anyMap());
+    }
+
+    @Test
+    void deletionShouldDropEditBeingFlushed() {
+        // given
+        noteWriteBuffer.modify(new NoteRequestModel("title", "buffered"));
+        when(noteService.modifyNotes(anyMap())).thenAnswer(invocation -> {
+            noteWriteBuffer.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.DELETED, 1L, "title", null, 3));
+            throw new IllegalStateException();
+        });
+
+        // when
+        noteWriteBuffer.flush();
+
+        // then
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(false));
+    }
+
+    @Test
+    void editOfNoteDeletedAfterItHasBeenReadShouldBeRejected() {
+        // given - note of version 3 is read, then deleted
+        noteWriteBuffer.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.DELETED, 1L, "title", null, 3));
+
+        // when
+        assertThrows(NoteNotFoundException.class, () -> noteWriteBuffer.modify(new NoteRequestModel("title", "stale")));
+
+        // then
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(false));
+    }
+
+    @Test
+    void editOfNoteCreatedAgainShouldBeBuffered() {
+        // given
+        noteWriteBuffer.onNoteChanged(new NoteChangedEvent(NoteChangedEvent.Type.DELETED, 1L, "title", null, 2));
+
+        // when - note of version 3 has been created again after deletion
+        noteWriteBuffer.modify(new NoteRequestModel("title", "fresh"));
+
+        // then
+        assertThat(noteWriteBuffer.hasPendingEdit(1L), is(true));
+    }
+}